@@ -0,0 +1,127 @@
+package com.proyecto.appclinica.config;
+
+import com.proyecto.appclinica.constant.AsyncExecutorConstants;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Ejecutores separados por tipo de evento, para que una ráfaga de un tipo (p. ej. resúmenes de historial)
+ * no retrase a los demás (p. ej. alertas SOS). Cada uno publica en Micrometer su cola, hilos activos y rechazos.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+@EnableConfigurationProperties(AsyncExecutorProperties.class)
+public class AsyncConfig {
+
+    private final AsyncExecutorProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    @Bean(name = AsyncExecutorConstants.SOS_ALERT_EXECUTOR)
+    public ThreadPoolTaskExecutor sosAlertExecutor() {
+        return buildExecutor("sos-alert");
+    }
+
+    @Bean(name = AsyncExecutorConstants.PATIENT_HISTORY_EXECUTOR)
+    public ThreadPoolTaskExecutor patientHistoryExecutor() {
+        return buildExecutor("patient-history");
+    }
+
+    @Bean(name = AsyncExecutorConstants.MEDICATION_REQUEST_EXECUTOR)
+    public ThreadPoolTaskExecutor medicationRequestExecutor() {
+        return buildExecutor("medication-request");
+    }
+
+    @Bean(name = AsyncExecutorConstants.MEDICATION_COMPLETED_EXECUTOR)
+    public ThreadPoolTaskExecutor medicationCompletedExecutor() {
+        return buildExecutor("medication-completed");
+    }
+
+    @Bean(name = AsyncExecutorConstants.MEDICATION_REMINDER_EXECUTOR)
+    public ThreadPoolTaskExecutor medicationReminderExecutor() {
+        return buildExecutor("medication-reminder");
+    }
+
+    @Bean(name = AsyncExecutorConstants.FHIR_PREFETCH_EXECUTOR)
+    public ThreadPoolTaskExecutor fhirPrefetchExecutor() {
+        return buildExecutor("fhir-prefetch");
+    }
+
+    /**
+     * Sustituye al ejecutor que Spring Boot crea por defecto (deja de crearse al definir otros ejecutores)
+     */
+    @Bean(name = {AsyncExecutorConstants.DEFAULT_EXECUTOR, "applicationTaskExecutor"})
+    public ThreadPoolTaskExecutor taskExecutor() {
+        return buildExecutor("default");
+    }
+
+    private ThreadPoolTaskExecutor buildExecutor(String name) {
+        AsyncExecutorProperties.Pool pool = properties.get(name);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(pool.getCorePoolSize());
+        executor.setMaxPoolSize(pool.getMaxPoolSize());
+        executor.setQueueCapacity(pool.getQueueCapacity());
+        executor.setThreadNamePrefix("async-" + name + "-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.setRejectedExecutionHandler(countingHandler(name, pool.getOverflowPolicy()));
+
+        if (pool.isVirtualThreads()) {
+            executor.setThreadFactory(Thread.ofVirtual().name("async-" + name + "-", 0).factory());
+        }
+
+        Gauge.builder("async.executor.queued", executor, ThreadPoolTaskExecutor::getQueueSize)
+                .description("Tareas en cola del ejecutor")
+                .tag("executor", name)
+                .register(meterRegistry);
+        Gauge.builder("async.executor.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Hilos ejecutando tareas")
+                .tag("executor", name)
+                .register(meterRegistry);
+        Gauge.builder("async.executor.pool.size", executor, ThreadPoolTaskExecutor::getPoolSize)
+                .description("Hilos actuales del pool")
+                .tag("executor", name)
+                .register(meterRegistry);
+
+        log.info("Ejecutor asíncrono '{}': core={}, max={}, cola={}, desborde={}, hilos virtuales={}",
+                name, pool.getCorePoolSize(), pool.getMaxPoolSize(), pool.getQueueCapacity(),
+                pool.getOverflowPolicy(), pool.isVirtualThreads());
+        return executor;
+    }
+
+    /**
+     * Cuenta cada tarea que no cabe en el ejecutor antes de aplicar la política de desborde configurada
+     */
+    private RejectedExecutionHandler countingHandler(String name, AsyncExecutorProperties.OverflowPolicy policy) {
+        Counter rejected = Counter.builder("async.executor.rejected")
+                .description("Tareas que no cupieron en el pool ni en la cola")
+                .tag("executor", name)
+                .tag("policy", policy.name())
+                .register(meterRegistry);
+
+        RejectedExecutionHandler delegate = switch (policy) {
+            case CALLER_RUNS -> new ThreadPoolExecutor.CallerRunsPolicy();
+            case ABORT -> new ThreadPoolExecutor.AbortPolicy();
+            case DISCARD -> new ThreadPoolExecutor.DiscardPolicy();
+            case DISCARD_OLDEST -> new ThreadPoolExecutor.DiscardOldestPolicy();
+        };
+
+        return (task, threadPoolExecutor) -> {
+            rejected.increment();
+            log.warn("Ejecutor asíncrono '{}' saturado (cola={}); política {}",
+                    name, threadPoolExecutor.getQueue().size(), policy);
+            delegate.rejectedExecution(task, threadPoolExecutor);
+        };
+    }
+}
@@ -0,0 +1,44 @@
+package com.proyecto.appclinica.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dimensionamiento de los ejecutores asíncronos, indexado por nombre de ejecutor (async.executors.*)
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "async")
+public class AsyncExecutorProperties {
+
+    private Map<String, Pool> executors = new HashMap<>();
+
+    public Pool get(String name) {
+        return executors.getOrDefault(name, new Pool());
+    }
+
+    @Getter
+    @Setter
+    public static class Pool {
+        private int corePoolSize = 2;
+        private int maxPoolSize = 4;
+        private int queueCapacity = 100;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.CALLER_RUNS;
+        // Los hilos del pool son virtuales; el tamaño del pool sigue limitando la concurrencia
+        private boolean virtualThreads = false;
+    }
+
+    /**
+     * Qué hacer con una tarea cuando el pool y su cola están llenos
+     */
+    public enum OverflowPolicy {
+        CALLER_RUNS, // La ejecuta el hilo que publicó el evento (contrapresión)
+        ABORT, // Lanza RejectedExecutionException al publicador
+        DISCARD, // Descarta la tarea nueva
+        DISCARD_OLDEST // Descarta la tarea más antigua de la cola
+    }
+}
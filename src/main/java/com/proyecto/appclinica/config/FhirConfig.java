@@ -1,12 +1,24 @@
 package com.proyecto.appclinica.config;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.apache.GZipContentInterceptor;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.client.interceptor.BearerTokenAuthInterceptor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
 @Configuration
 public class FhirConfig {
     @Value("${fhir.server.url}")
@@ -15,15 +27,100 @@ public class FhirConfig {
     @Value("${fhir.server.token}")
     private String fhirServerToken;
 
+    // Conexiones abiertas en total y por servidor (ruta); todas las peticiones van al mismo servidor FHIR
+    @Value("${fhir.http.max-total:100}")
+    private int maxTotalConnections;
+
+    @Value("${fhir.http.max-per-route:50}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${fhir.http.connect-timeout-ms:5000}")
+    private int connectTimeout;
+
+    @Value("${fhir.http.socket-timeout-ms:30000}")
+    private int socketTimeout;
+
+    // Espera máxima por una conexión libre del pool
+    @Value("${fhir.http.connection-request-timeout-ms:5000}")
+    private int connectionRequestTimeout;
+
+    // Tiempo que una conexión ociosa se mantiene abierta para reutilizarla
+    @Value("${fhir.http.keep-alive-ms:30000}")
+    private long keepAlive;
+
+    // Comprime con gzip el cuerpo de las peticiones (el servidor debe admitir Content-Encoding: gzip)
+    @Value("${fhir.http.gzip-requests:false}")
+    private boolean gzipRequests;
+
     @Bean
     public FhirContext fhirContext() {
         return FhirContext.forR4();
     }
 
+    /**
+     * Pool de conexiones HTTP compartido por el cliente FHIR. Las respuestas se piden comprimidas
+     * (Accept-Encoding: gzip) y se descomprimen de forma transparente.
+     */
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager fhirConnectionManager(MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                keepAlive, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(maxTotalConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        // Revalida conexiones reutilizadas tras un tiempo ociosas (el servidor pudo cerrarlas)
+        connectionManager.setValidateAfterInactivity(2000);
+
+        Gauge.builder("fhir.http.pool.leased", connectionManager, cm -> cm.getTotalStats().getLeased())
+                .description("Conexiones al servidor FHIR en uso")
+                .register(meterRegistry);
+        Gauge.builder("fhir.http.pool.pending", connectionManager, cm -> cm.getTotalStats().getPending())
+                .description("Peticiones esperando una conexión libre (saturación del pool)")
+                .register(meterRegistry);
+        Gauge.builder("fhir.http.pool.available", connectionManager, cm -> cm.getTotalStats().getAvailable())
+                .description("Conexiones ociosas reutilizables")
+                .register(meterRegistry);
+        Gauge.builder("fhir.http.pool.max", connectionManager, cm -> cm.getTotalStats().getMax())
+                .description("Máximo de conexiones del pool")
+                .register(meterRegistry);
+
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient fhirHttpClient(PoolingHttpClientConnectionManager fhirConnectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .setConnectionRequestTimeout(connectionRequestTimeout)
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(fhirConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                // Respeta el Keep-Alive del servidor sin superar el máximo configurado
+                .setKeepAliveStrategy((response, context) -> {
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE
+                            .getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAlive) : keepAlive;
+                })
+                .evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS)
+                .evictExpiredConnections()
+                .build();
+    }
+
     @Bean
-    public IGenericClient fhirClient(FhirContext fhirContext) {
+    public IGenericClient fhirClient(FhirContext fhirContext, CloseableHttpClient fhirHttpClient) {
+        fhirContext.getRestfulClientFactory().setHttpClient(fhirHttpClient);
+
+        log.info("Cliente FHIR: pool de {} conexiones ({} por ruta), timeouts conexión={} ms, lectura={} ms",
+                maxTotalConnections, maxConnectionsPerRoute, connectTimeout, socketTimeout);
+
         IGenericClient client = fhirContext.newRestfulGenericClient(fhirServerUrl);
 
+        if (gzipRequests) {
+            client.registerInterceptor(new GZipContentInterceptor());
+        }
+
         if (fhirServerToken != null && !fhirServerToken.isEmpty()) {
             BearerTokenAuthInterceptor authInterceptor = new BearerTokenAuthInterceptor(fhirServerToken);
             client.registerInterceptor(authInterceptor);
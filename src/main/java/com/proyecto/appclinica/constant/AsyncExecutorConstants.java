@@ -0,0 +1,22 @@
+package com.proyecto.appclinica.constant;
+
+/**
+ * Nombres de los ejecutores de los listeners asíncronos (usados en {@code @Async})
+ */
+public class AsyncExecutorConstants {
+    private AsyncExecutorConstants() {
+        // Constructor privado para evitar la instanciación
+    }
+
+    public static final String SOS_ALERT_EXECUTOR = "sosAlertExecutor";
+    public static final String PATIENT_HISTORY_EXECUTOR = "patientHistoryExecutor";
+    public static final String MEDICATION_REQUEST_EXECUTOR = "medicationRequestExecutor";
+    public static final String MEDICATION_COMPLETED_EXECUTOR = "medicationCompletedExecutor";
+    public static final String MEDICATION_REMINDER_EXECUTOR = "medicationReminderExecutor";
+
+    // Descarga anticipada de la siguiente página de las búsquedas FHIR
+    public static final String FHIR_PREFETCH_EXECUTOR = "fhirPrefetchExecutor";
+
+    // Ejecutor por defecto para el resto de @Async y las peticiones asíncronas de Spring MVC
+    public static final String DEFAULT_EXECUTOR = "taskExecutor";
+}
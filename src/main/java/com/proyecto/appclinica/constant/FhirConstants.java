@@ -20,6 +20,9 @@ public class FhirConstants {
     public static final String SCHEDULE_PATTERN_EXTENSION = "http://appmedica.org/fhir/extensions/schedulePattern";
     public static final String CUSTOM_TIME_EXTENSION = "http://appmedica.org/fhir/extensions/customTime";
 
+    // Identificador de la dosis local en los MedicationStatement (permite creaciones condicionales idempotentes)
+    public static final String MEDICATION_DOSE_IDENTIFIER_SYSTEM = "http://appmedica.org/fhir/identifiers/medicationDose";
+
     private FhirConstants() {
     } // Prevenir instanciación
 }
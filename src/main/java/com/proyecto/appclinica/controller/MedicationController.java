@@ -1,14 +1,23 @@
 package com.proyecto.appclinica.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationAdherenceDto;
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationPageDto;
 import com.proyecto.appclinica.model.dto.treatment.medication.MedicationResponseDto;
 import com.proyecto.appclinica.model.dto.treatment.medication.MedicationStatusUpdateDto;
+import com.proyecto.appclinica.model.entity.EMedicationStatementStatus;
+import com.proyecto.appclinica.service.MedicationAdherenceService;
 import com.proyecto.appclinica.service.MedicationService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -17,7 +26,11 @@ import java.util.List;
 @RequestMapping("/api/medications")
 public class MedicationController {
 
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final MedicationService medicationService;
+    private final MedicationAdherenceService medicationAdherenceService;
+    private final ObjectMapper objectMapper;
 
     @PreAuthorize("hasRole('PATIENT')")
     @GetMapping("/today/{patientId}")
@@ -43,25 +56,50 @@ public class MedicationController {
         return ResponseEntity.ok(updatedMedication);
     }
 
+    // Página de dosis del rango (opcionalmente de un estado); la siguiente se pide con el nextCursor de la respuesta
     @PreAuthorize("hasRole('PATIENT')")
-    @GetMapping("/range/{patientId}")
-    public ResponseEntity<List<MedicationResponseDto>> getMedicationsInDateRange(
+    @GetMapping("/range/{patientId}/page")
+    public ResponseEntity<MedicationPageDto> getMedicationsPage(
             @PathVariable String patientId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
-        List<MedicationResponseDto> medications = medicationService.getMedicationsInDateRange(patientId, startDate, endDate);
-        return ResponseEntity.ok(medications);
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) EMedicationStatementStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int size) {
+        MedicationPageDto page = medicationService.getMedicationsPage(patientId, startDate, endDate, status, cursor, size);
+        return ResponseEntity.ok(page);
     }
 
+    // Todas las dosis del rango como NDJSON (un objeto JSON por línea), escritas a medida que se leen
     @PreAuthorize("hasRole('PATIENT')")
-    @GetMapping("/range/{patientId}/status")
-    public ResponseEntity<List<MedicationResponseDto>> getMedicationsByDateRangeAndStatus(
+    @GetMapping("/range/{patientId}/stream")
+    public ResponseEntity<StreamingResponseBody> streamMedicationsInDateRange(
             @PathVariable String patientId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
-            @RequestParam String status) {
-        List<MedicationResponseDto> medications = medicationService.getMedicationsByDateRangeAndStatus(
-                patientId, startDate, endDate, status);
-        return ResponseEntity.ok(medications);
+            @RequestParam(required = false) EMedicationStatementStatus status) {
+        StreamingResponseBody body = outputStream -> medicationService.streamMedications(
+                patientId, startDate, endDate, status, medication -> {
+                    try {
+                        outputStream.write(objectMapper.writeValueAsBytes(medication));
+                        outputStream.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+
+        return ResponseEntity.ok()
+                .contentType(APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @PreAuthorize("hasRole('PATIENT')")
+    @GetMapping("/adherence/{patientId}")
+    public ResponseEntity<MedicationAdherenceDto> getMedicationAdherence(
+            @PathVariable String patientId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        MedicationAdherenceDto adherence = medicationAdherenceService.getAdherence(patientId, startDate, endDate);
+        return ResponseEntity.ok(adherence);
     }
 }
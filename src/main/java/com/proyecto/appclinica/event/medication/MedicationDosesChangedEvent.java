@@ -0,0 +1,14 @@
+package com.proyecto.appclinica.event.medication;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Se publica cuando cambian las dosis guardadas de un MedicationRequest (creación, reconciliación
+ * o cambio de estado) para que el temporizador de vencimientos recalcule sus plazos.
+ */
+@Getter
+@AllArgsConstructor
+public class MedicationDosesChangedEvent {
+    private String medicationRequestId;
+}
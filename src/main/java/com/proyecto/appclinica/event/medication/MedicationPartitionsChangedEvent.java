@@ -0,0 +1,15 @@
+package com.proyecto.appclinica.event.medication;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Set;
+
+/**
+ * Se publica cuando este nodo gana o pierde particiones de pacientes del planificador de medicamentos
+ */
+@Getter
+@AllArgsConstructor
+public class MedicationPartitionsChangedEvent {
+    private Set<Integer> ownedPartitions;
+}
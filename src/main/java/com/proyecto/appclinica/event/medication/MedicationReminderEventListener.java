@@ -0,0 +1,60 @@
+package com.proyecto.appclinica.event.medication;
+
+import com.proyecto.appclinica.constant.AsyncExecutorConstants;
+import com.proyecto.appclinica.model.entity.MedicationEntity;
+import com.proyecto.appclinica.model.entity.PatientEntity;
+import com.proyecto.appclinica.repository.PatientRepository;
+import com.proyecto.appclinica.service.MedicationReminderService;
+import com.proyecto.appclinica.service.SmsService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MedicationReminderEventListener {
+
+    private final PatientRepository patientRepository;
+    private final SmsService smsService;
+    private final MedicationReminderService medicationReminderService;
+
+    @EventListener
+    @Async(AsyncExecutorConstants.MEDICATION_REMINDER_EXECUTOR)
+    public void handleMedicationReminderEvent(MedicationReminderEvent event) {
+        MedicationEntity medication = event.getMedication();
+
+        Optional<PatientEntity> patient = patientRepository.findByPatientId(event.getPatientId());
+        if (patient.isEmpty() || !StringUtils.hasText(patient.get().getPhone())) {
+            log.warn("No se pudo enviar el recordatorio del medicamento {}: el paciente {} no tiene teléfono registrado",
+                    medication.getId(), event.getPatientId());
+            return;
+        }
+
+        String message = String.format("💊 Recordatorio (%d): %s, tome %s %s de %s programado a las %s.",
+                event.getAttemptNumber(),
+                patient.get().getName(),
+                medication.getDoseValue().stripTrailingZeros().toPlainString(),
+                medication.getDoseUnit(),
+                medication.getNameMedicine(),
+                medication.getTimeOfTaking().toLocalDateTime().format(DateTimeFormatter.ofPattern("HH:mm")));
+
+        try {
+            smsService.sendSms(patient.get().getPhone(), message);
+        } catch (Exception e) {
+            // El intento se reservó antes de enviar: se libera para que la siguiente ejecución lo reintente
+            medicationReminderService.releaseReminderAttempt(medication.getId(), event.getAttemptNumber());
+            log.warn("Error al enviar el recordatorio {} del medicamento {}; se reintentará: {}",
+                    event.getAttemptNumber(), medication.getId(), e.getMessage());
+            return;
+        }
+        log.info("Recordatorio {} del medicamento {} enviado al paciente {}",
+                event.getAttemptNumber(), medication.getId(), event.getPatientId());
+    }
+}
@@ -0,0 +1,11 @@
+package com.proyecto.appclinica.event.medication;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.hl7.fhir.r4.model.MedicationRequest;
+
+@Getter
+@AllArgsConstructor
+public class MedicationRequestUpdatedEvent {
+    private MedicationRequest medicationRequest;
+}
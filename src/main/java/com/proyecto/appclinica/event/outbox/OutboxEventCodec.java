@@ -0,0 +1,141 @@
+package com.proyecto.appclinica.event.outbox;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.proyecto.appclinica.constant.AsyncExecutorConstants;
+import com.proyecto.appclinica.event.medication.MedicationCompletedEvent;
+import com.proyecto.appclinica.event.medication.MedicationRequestCreatedEvent;
+import com.proyecto.appclinica.event.medication.MedicationRequestUpdatedEvent;
+import com.proyecto.appclinica.event.patient.PatientHistoryEvent;
+import com.proyecto.appclinica.event.sos.AlertSosCreateEvent;
+import com.proyecto.appclinica.event.user.UserSettingsCreationEvent;
+import com.proyecto.appclinica.model.entity.*;
+import com.proyecto.appclinica.repository.MedicationRepository;
+import com.proyecto.appclinica.repository.PatientRepository;
+import com.proyecto.appclinica.repository.SosRepository;
+import com.proyecto.appclinica.repository.UserSettingsRepository;
+import lombok.RequiredArgsConstructor;
+import org.hl7.fhir.r4.model.MedicationRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Convierte los eventos de dominio en filas del outbox y viceversa. Solo se guardan identificadores
+ * (salvo el MedicationRequest, que vive en FHIR): al despachar, las entidades se vuelven a leer.
+ */
+@Component
+@RequiredArgsConstructor
+public class OutboxEventCodec {
+
+    private final ObjectMapper objectMapper;
+    private final FhirContext fhirContext;
+    private final MedicationRepository medicationRepository;
+    private final PatientRepository patientRepository;
+    private final SosRepository sosRepository;
+    private final UserSettingsRepository userSettingsRepository;
+
+    public OutboxEventEntity encode(Object event) {
+        return switch (event) {
+            case MedicationRequestCreatedEvent e -> row(e, e.getMedicationRequest().getIdElement().getIdPart(),
+                    fhirContext.newJsonParser().encodeResourceToString(e.getMedicationRequest()));
+            case MedicationRequestUpdatedEvent e -> row(e, e.getMedicationRequest().getIdElement().getIdPart(),
+                    fhirContext.newJsonParser().encodeResourceToString(e.getMedicationRequest()));
+            case MedicationCompletedEvent e -> row(e, e.getPatientId(),
+                    json(Map.of("medicationId", e.getMedication().getId(), "patientId", e.getPatientId())));
+            case AlertSosCreateEvent e -> row(e, e.getPatient().getPatientId(),
+                    json(Map.of("sosId", e.getSos().getId(), "patientId", e.getPatient().getPatientId())));
+            case PatientHistoryEvent e -> row(e, e.getPatientId(), json(Map.of("patientId", e.getPatientId())));
+            case UserSettingsCreationEvent e -> row(e, e.getPatientId(), json(Map.of("patientId", e.getPatientId())));
+            default -> throw new IllegalArgumentException(
+                    "Evento no soportado por el outbox: " + event.getClass().getSimpleName());
+        };
+    }
+
+    /**
+     * Reconstruye el evento de la fila.
+     *
+     * @return vacío si la entidad que lo originó ya no existe (el evento se descarta)
+     */
+    @Transactional(readOnly = true)
+    public Optional<Object> decode(OutboxEventEntity row) {
+        String payload = row.getPayload();
+
+        return switch (row.getEventType()) {
+            case "MedicationRequestCreatedEvent" -> Optional.of(new MedicationRequestCreatedEvent(
+                    fhirContext.newJsonParser().parseResource(MedicationRequest.class, payload)));
+            case "MedicationRequestUpdatedEvent" -> Optional.of(new MedicationRequestUpdatedEvent(
+                    fhirContext.newJsonParser().parseResource(MedicationRequest.class, payload)));
+            case "MedicationCompletedEvent" -> {
+                JsonNode node = tree(payload);
+                String patientId = node.get("patientId").asText();
+                yield medicationRepository.findById(node.get("medicationId").asLong())
+                        .map(medication -> new MedicationCompletedEvent(medication, patientId));
+            }
+            case "AlertSosCreateEvent" -> {
+                JsonNode node = tree(payload);
+                String patientId = node.get("patientId").asText();
+                Optional<PatientEntity> patient = patientRepository.findByPatientId(patientId);
+                Optional<SosEntity> sos = sosRepository.findById(node.get("sosId").asLong());
+                Optional<UserSettings> userSettings = userSettingsRepository.findByPatientId(patientId);
+                if (patient.isEmpty() || sos.isEmpty() || userSettings.isEmpty()) {
+                    yield Optional.empty();
+                }
+                // Los contactos se cargan aquí: el listener se ejecuta fuera de esta sesión
+                userSettings.get().getEmergencyContacts().size();
+                yield Optional.of(new AlertSosCreateEvent(patient.get(), sos.get(), userSettings.get()));
+            }
+            case "PatientHistoryEvent" -> Optional.of(new PatientHistoryEvent(tree(payload).get("patientId").asText()));
+            case "UserSettingsCreationEvent" ->
+                    Optional.of(new UserSettingsCreationEvent(tree(payload).get("patientId").asText()));
+            default -> throw new IllegalArgumentException("Tipo de evento desconocido en el outbox: " + row.getEventType());
+        };
+    }
+
+    /**
+     * Ejecutor en el que se despacha cada tipo de evento (mismo aislamiento que los listeners asíncronos)
+     */
+    public String executorFor(String eventType) {
+        return switch (eventType) {
+            case "MedicationRequestCreatedEvent", "MedicationRequestUpdatedEvent" ->
+                    AsyncExecutorConstants.MEDICATION_REQUEST_EXECUTOR;
+            case "MedicationCompletedEvent" -> AsyncExecutorConstants.MEDICATION_COMPLETED_EXECUTOR;
+            case "AlertSosCreateEvent" -> AsyncExecutorConstants.SOS_ALERT_EXECUTOR;
+            case "PatientHistoryEvent" -> AsyncExecutorConstants.PATIENT_HISTORY_EXECUTOR;
+            default -> AsyncExecutorConstants.DEFAULT_EXECUTOR;
+        };
+    }
+
+    private OutboxEventEntity row(Object event, String aggregateId, String payload) {
+        LocalDateTime now = LocalDateTime.now();
+        return OutboxEventEntity.builder()
+                .eventType(event.getClass().getSimpleName())
+                .aggregateId(aggregateId)
+                .payload(payload)
+                .attempts(0)
+                .availableAt(now)
+                .createdAt(now)
+                .build();
+    }
+
+    private String json(Map<String, Object> values) {
+        try {
+            return objectMapper.writeValueAsString(values);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el evento del outbox", e);
+        }
+    }
+
+    private JsonNode tree(String payload) {
+        try {
+            return objectMapper.readTree(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Payload del outbox no válido", e);
+        }
+    }
+}
@@ -6,14 +6,15 @@ import com.proyecto.appclinica.model.entity.ERole;
 import com.proyecto.appclinica.model.entity.PatientEntity;
 import com.proyecto.appclinica.model.entity.RoleEntity;
 import com.proyecto.appclinica.repository.PatientRepository;
+import com.proyecto.appclinica.service.OutboxService;
 import com.proyecto.appclinica.service.RoleService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.r4.model.ContactPoint;
 import org.hl7.fhir.r4.model.Patient;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -25,9 +26,10 @@ import java.util.UUID;
 public class PatientCreatedEventListener {
     private final PatientRepository patientRepository;
     private final RoleService roleService;
-    private final ApplicationEventPublisher eventPublisher;
+    private final OutboxService outboxService;
 
     @EventListener
+    @Transactional // El paciente y el evento de sus configuraciones se guardan juntos
     public PatientEntity createPatient(PatientCreatedEvent event) {
         Set<RoleEntity> roles = new HashSet<>();
         Patient patient = event.getPatient();
@@ -44,7 +46,7 @@ public class PatientCreatedEventListener {
 
         // Publicar evento para crear las configuraciones de usuario de manera asíncrona
         log.info("Publicando evento para crear configuraciones de usuario para paciente ID: {}", savedPatient.getId());
-        eventPublisher.publishEvent(new UserSettingsCreationEvent(savedPatient.getPatientId()));
+        outboxService.publish(new UserSettingsCreationEvent(savedPatient.getPatientId()));
 
         return savedPatient;
     }
@@ -5,7 +5,6 @@ import com.proyecto.appclinica.service.PatientHistoryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 @Slf4j
@@ -15,7 +14,6 @@ public class PatientHistoryEventListener {
     private final PatientHistoryService patientHistoryService;
 
     @EventListener
-    @Async
     public void createPatientHistory(PatientHistoryEvent event) {
         PatientHistoryResponse historyResponse = patientHistoryService.createPatientHistory(event.getPatientId());
         log.info("{} - {}", historyResponse.message(), historyResponse.patientId());
@@ -8,7 +8,6 @@ import com.proyecto.appclinica.service.SmsService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
@@ -22,7 +21,6 @@ public class AlertSosCreateEventListener {
     private final SmsService smsService;
 
     @EventListener
-    @Async
     public void handleAlertSosCreateEvent(AlertSosCreateEvent event) {
 
         log.info("Entrando al manejador de eventos AlertSosCreateEvent");
@@ -4,7 +4,6 @@ import com.proyecto.appclinica.service.UserSettingsService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -14,7 +13,6 @@ public class UserSettingsCreationEventListener {
 
     private final UserSettingsService userSettingsService;
 
-    @Async
     @EventListener
     public void handleUserSettingsCreation(UserSettingsCreationEvent event) {
         String patientId = event.getPatientId();
@@ -24,7 +22,8 @@ public class UserSettingsCreationEventListener {
             log.info("Configuraciones de usuario creadas exitosamente para el usuario con ID: {}", patientId);
         } catch (Exception e) {
             log.error("Error al crear configuraciones para el usuario con ID: {}", patientId, e);
-            // Implementar reintentos o notificaciones según sea necesario
+            // Se relanza para que el outbox reintente el evento
+            throw e;
         }
     }
 }
@@ -0,0 +1,14 @@
+package com.proyecto.appclinica.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * El recurso se modificó desde que se leyó (control de concurrencia optimista)
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ResourceConflictException extends RuntimeException {
+    public ResourceConflictException(String message) {
+        super(message);
+    }
+}
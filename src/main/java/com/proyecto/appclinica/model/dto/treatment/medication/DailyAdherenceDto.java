@@ -0,0 +1,11 @@
+package com.proyecto.appclinica.model.dto.treatment.medication;
+
+import java.time.LocalDate;
+
+public record DailyAdherenceDto(
+        LocalDate date,
+        long completed,
+        long notTaken,
+        long intended
+) {
+}
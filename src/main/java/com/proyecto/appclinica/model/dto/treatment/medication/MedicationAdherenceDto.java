@@ -0,0 +1,16 @@
+package com.proyecto.appclinica.model.dto.treatment.medication;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public record MedicationAdherenceDto(
+        String patientId,
+        LocalDate startDate,
+        LocalDate endDate,
+        long completed,
+        long notTaken,
+        long intended,
+        Double adherenceRate, // completadas / (completadas + no tomadas); null si aún no hay dosis resueltas
+        List<DailyAdherenceDto> days
+) {
+}
@@ -0,0 +1,15 @@
+package com.proyecto.appclinica.model.dto.treatment.medication;
+
+import java.sql.Timestamp;
+
+/**
+ * Proyección de una dosis pendiente con su plazo de vencimiento (hora de toma + ventana de tolerancia)
+ */
+public interface MedicationDeadlineView {
+
+    Long getId();
+
+    String getMedicationRequestId();
+
+    Timestamp getDeadline();
+}
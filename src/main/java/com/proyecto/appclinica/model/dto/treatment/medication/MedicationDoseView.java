@@ -0,0 +1,50 @@
+package com.proyecto.appclinica.model.dto.treatment.medication;
+
+import com.proyecto.appclinica.model.entity.EMedicationStatementStatus;
+import com.proyecto.appclinica.model.entity.MedicationEntity;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+
+/**
+ * Fila de dosis leída directamente con una consulta de proyección (sin entidad gestionada).
+ * Las dosis calculadas (no materializadas) llevan un ID negativo estable (ver VirtualDoseId): se expone en el DTO
+ * y al actualizar su estado la dosis se materializa.
+ */
+public record MedicationDoseView(
+        Long id,
+        String nameMedicine,
+        BigDecimal doseValue,
+        String doseUnit,
+        Timestamp timeOfTaking,
+        LocalDate date,
+        EMedicationStatementStatus status,
+        String medicationRequestId
+) {
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
+    // Mismo orden que las consultas: hora de toma y después ID
+    public static final Comparator<MedicationDoseView> ORDER = Comparator
+            .comparing(MedicationDoseView::timeOfTaking)
+            .thenComparing(MedicationDoseView::id);
+
+    public static MedicationDoseView of(MedicationEntity entity) {
+        return new MedicationDoseView(entity.getId(), entity.getNameMedicine(), entity.getDoseValue(),
+                entity.getDoseUnit(), entity.getTimeOfTaking(), entity.getDate(), entity.getStatus(),
+                entity.getMedicationRequestId());
+    }
+
+    public MedicationResponseDto toResponseDto() {
+        return new MedicationResponseDto(
+                id,
+                nameMedicine,
+                doseValue + " " + doseUnit, // "valor unidad" (ej: "10 mg")
+                timeOfTaking.toLocalDateTime().format(TIME_FORMATTER),
+                date.toString(), // formato ISO "yyyy-MM-dd"
+                status.getDescription()
+        );
+    }
+}
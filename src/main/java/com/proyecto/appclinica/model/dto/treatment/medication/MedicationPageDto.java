@@ -0,0 +1,9 @@
+package com.proyecto.appclinica.model.dto.treatment.medication;
+
+import java.util.List;
+
+public record MedicationPageDto(
+        List<MedicationResponseDto> medications,
+        String nextCursor // null cuando no hay más páginas
+) {
+}
@@ -0,0 +1,17 @@
+package com.proyecto.appclinica.model.dto.treatment.medication;
+
+import java.sql.Timestamp;
+
+/**
+ * Proyección de una dosis pendiente con la configuración de recordatorios de su paciente
+ */
+public interface MedicationReminderView {
+
+    Long getId();
+
+    Timestamp getTimeOfTaking();
+
+    Integer getReminderFrequencyMinutes();
+
+    Integer getMaxReminderAttempts();
+}
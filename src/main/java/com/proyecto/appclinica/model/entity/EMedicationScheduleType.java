@@ -0,0 +1,7 @@
+package com.proyecto.appclinica.model.entity;
+
+public enum EMedicationScheduleType {
+    REGULAR,        // Frecuencia fija (cada N horas/días/semanas/meses)
+    IRREGULAR,      // Patrones del día (MORNING, NOON, AFTERNOON, EVENING, NIGHT)
+    CUSTOM_TIME     // Horas personalizadas (HH:mm)
+}
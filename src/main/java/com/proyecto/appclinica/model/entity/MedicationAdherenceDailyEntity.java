@@ -0,0 +1,32 @@
+package com.proyecto.appclinica.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Conteo diario de dosis por estado para un paciente y MedicationRequest (tabla creada por Flyway).
+ * Permite calcular la adherencia leyendo una fila por día en lugar de todas las dosis.
+ */
+@Getter
+@Setter
+@Entity
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "medication_adherence_daily")
+public class MedicationAdherenceDailyEntity {
+
+    @EmbeddedId
+    private MedicationAdherenceDailyId id;
+
+    @Column(name = "completed", nullable = false)
+    private int completed;
+
+    @Column(name = "not_taken", nullable = false)
+    private int notTaken;
+
+    @Column(name = "intended", nullable = false)
+    private int intended;
+}
@@ -0,0 +1,29 @@
+package com.proyecto.appclinica.model.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+@Embeddable
+@Getter
+@EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+public class MedicationAdherenceDailyId implements Serializable {
+
+    @Column(name = "patient_id", nullable = false)
+    private String patientId;
+
+    @Column(name = "day", nullable = false)
+    private LocalDate day;
+
+    // Cadena vacía para dosis sin MedicationRequest
+    @Column(name = "medication_request_id", nullable = false)
+    private String medicationRequestId;
+}
@@ -5,6 +5,8 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.SQLInsert;
+import org.hibernate.jdbc.Expectation;
 
 import java.math.BigDecimal;
 import java.sql.Timestamp;
@@ -16,9 +18,21 @@ import java.time.LocalDate;
 @AllArgsConstructor
 @NoArgsConstructor
 @Table(name = "medications")
+// Una dosis por tratamiento y hora (índice único): si ya existe, el INSERT no hace nada, así generar las dosis
+// de una pauta dos veces (p. ej. un evento del outbox entregado de nuevo) no las duplica.
+// Las columnas siguen el orden del INSERT que genera Hibernate (atributos por nombre y el ID al final)
+@SQLInsert(sql = """
+        INSERT INTO medications (date, dose_unit, dose_value, is_irregular, medication_request_id, name_medicine,
+                                 patient_id, schedule_pattern, status, time_of_taking, id)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        ON CONFLICT DO NOTHING
+        """, verify = Expectation.None.class)
 public class MedicationEntity {
+    // Secuencia con allocationSize para que Hibernate pueda agrupar los INSERT en lotes JDBC
+    // (con IDENTITY cada fila necesita su propio round trip para obtener el ID)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "medications_seq")
+    @SequenceGenerator(name = "medications_seq", sequenceName = "medications_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "name_medicine", nullable = false)
@@ -0,0 +1,66 @@
+package com.proyecto.appclinica.model.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Copia local de la pauta de un MedicationRequest. Permite generar las dosis de cualquier día
+ * sin volver a consultar FHIR: las dosis se materializan en la tabla medications solo hasta
+ * {@code materializedUntil} y el resto se calcula al vuelo.
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "medication_schedules")
+public class MedicationScheduleEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "medication_request_id", nullable = false, unique = true)
+    private String medicationRequestId;
+
+    @Column(name = "patient_id", nullable = false)
+    private String patientId;
+
+    @Column(name = "name_medicine", nullable = false)
+    private String nameMedicine;
+
+    @Column(name = "dose_value", nullable = false)
+    private BigDecimal doseValue;
+
+    @Column(name = "dose_unit", nullable = false)
+    private String doseUnit;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "schedule_type", nullable = false)
+    private EMedicationScheduleType scheduleType;
+
+    @Column(name = "start_date_time", nullable = false)
+    private LocalDateTime startDateTime;
+
+    @Column(name = "end_date_time", nullable = false)
+    private LocalDateTime endDateTime;
+
+    @Column(name = "end_date", nullable = false)
+    private LocalDate endDate;
+
+    // Solo para horarios regulares: separación entre dosis en segundos
+    @Column(name = "interval_seconds")
+    private Long intervalSeconds;
+
+    // Horarios irregulares: "MORNING,NIGHT"; horarios personalizados: "08:00,20:00"
+    @Column(name = "schedule_pattern")
+    private String schedulePattern;
+
+    // Último día (inclusive) cuyas dosis ya existen en la tabla medications
+    @Column(name = "materialized_until", nullable = false)
+    private LocalDate materializedUntil;
+}
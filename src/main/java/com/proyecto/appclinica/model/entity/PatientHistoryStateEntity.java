@@ -0,0 +1,49 @@
+package com.proyecto.appclinica.model.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Resumen clínico vigente de un paciente y hasta qué meta.lastUpdated de FHIR está resumido.
+ * La versión evita que dos actualizaciones simultáneas del mismo paciente se pisen.
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "patient_history_state")
+public class PatientHistoryStateEntity {
+    @Id
+    @Column(name = "patient_id")
+    private String patientId;
+
+    @Column(name = "summary", nullable = false, columnDefinition = "TEXT")
+    private String summary;
+
+    @Column(name = "last_updated", nullable = false)
+    private LocalDateTime lastUpdated;
+
+    // Versiones ya resumidas en el margen de solapamiento ("Tipo/id/_history/v@epochMillis", separadas por comas)
+    @Column(name = "boundary_versions", nullable = false, columnDefinition = "TEXT")
+    private String boundaryVersions;
+
+    // Fecha clínica más antigua resumida (procedimientos y tratamientos); null si no hay ninguna
+    @Column(name = "oldest_item")
+    private LocalDate oldestItem;
+
+    // Última vez que el resumen se generó desde cero
+    @Column(name = "rebuilt_at", nullable = false)
+    private LocalDateTime rebuiltAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+}
@@ -0,0 +1,41 @@
+package com.proyecto.appclinica.model.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Copia local (solo lectura) de una Observation de síntoma de FHIR. Las consultas del diario se sirven
+ * desde esta tabla; FHIR sigue siendo la fuente de verdad.
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "symptom_observations")
+public class SymptomObservationEntity {
+    @Id
+    @Column(name = "observation_id")
+    private String observationId;
+
+    @Column(name = "patient_id", nullable = false)
+    private String patientId;
+
+    @Column(name = "effective_at")
+    private LocalDateTime effectiveAt;
+
+    @Column(name = "symptom")
+    private String symptom;
+
+    @Column(name = "intensity")
+    private String intensity;
+
+    @Column(name = "notes", columnDefinition = "TEXT")
+    private String notes;
+
+    @Column(name = "last_updated", nullable = false)
+    private LocalDateTime lastUpdated;
+}
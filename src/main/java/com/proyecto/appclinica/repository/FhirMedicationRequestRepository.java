@@ -1,25 +1,43 @@
 package com.proyecto.appclinica.repository;
 
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PreferReturnEnum;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
 import com.proyecto.appclinica.exception.FhirClientException;
+import com.proyecto.appclinica.exception.ResourceConflictException;
 import com.proyecto.appclinica.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.hl7.fhir.r4.model.*;
 import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 @Repository
 @RequiredArgsConstructor
 public class FhirMedicationRequestRepository {
 
     private final IGenericClient fhirClient;
+    private final FhirSearchPager fhirSearchPager;
+    private final MeterRegistry meterRegistry;
+
+    // Elementos necesarios para listar tratamientos; las búsquedas solo piden estos (_elements)
+    private static final String[] TREATMENT_LIST_ELEMENTS = {"status", "medication", "dosageInstruction", "dispenseRequest"};
+    private static final int MAX_CACHED_REQUESTS = 5_000;
+
+    // Última versión conocida de cada MedicationRequest (completo), por ID. Se revalida con If-None-Match.
+    private final Map<String, MedicationRequest> versionCache = new ConcurrentHashMap<>();
 
     public MedicationRequest saveMedicationRequest(MedicationRequest medicationRequest) {
+        // Pedimos el recurso creado en la misma respuesta para evitar una segunda lectura
         MethodOutcome outcome = fhirClient.create()
                 .resource(medicationRequest)
+                .prefer(PreferReturnEnum.REPRESENTATION)
                 .execute();
 
         // Devuelve el recurso con ID asignado por el servidor
@@ -28,6 +46,7 @@ public class FhirMedicationRequestRepository {
             savedRequest = (MedicationRequest) outcome.getResource();
         } else {
             // Si el servidor no devuelve el recurso completo, obtenemos el ID y lo recuperamos
+            countFallbackRead("create");
             IdType id = (IdType) outcome.getId();
             savedRequest = fhirClient.read()
                     .resource(MedicationRequest.class)
@@ -35,45 +54,86 @@ public class FhirMedicationRequestRepository {
                     .execute();
         }
 
+        cache(savedRequest);
         return savedRequest;
     }
 
+    /**
+     * Lee el MedicationRequest. Si hay una versión en caché se revalida con If-None-Match: si no ha cambiado,
+     * el servidor responde 304 sin cuerpo y se devuelve una copia de la caché.
+     */
     public MedicationRequest getMedicationRequestById(String medicationRequestId) {
+        MedicationRequest cached = versionCache.get(medicationRequestId);
+        String cachedVersion = cached != null ? cached.getIdElement().getVersionIdPart() : null;
+
         try {
-            return fhirClient.read()
+            if (cachedVersion != null) {
+                MedicationRequest modified = fhirClient.read()
+                        .resource(MedicationRequest.class)
+                        .withId(medicationRequestId)
+                        .ifVersionMatches(cachedVersion).returnNull()
+                        .execute();
+
+                meterRegistry.counter("fhir.read.revalidations", "resource", "MedicationRequest",
+                        "outcome", modified == null ? "not_modified" : "modified").increment();
+                if (modified == null) {
+                    return cached.copy();
+                }
+                cache(modified);
+                return modified;
+            }
+
+            MedicationRequest medicationRequest = fhirClient.read()
                     .resource(MedicationRequest.class)
                     .withId(medicationRequestId)
                     .execute();
+            cache(medicationRequest);
+            return medicationRequest;
         } catch (Exception e) {
+            versionCache.remove(medicationRequestId);
             throw new ResourceNotFoundException("MedicationRequest", "ID", medicationRequestId);
         }
     }
 
+    /**
+     * Actualiza el MedicationRequest con concurrencia optimista: si el ID del recurso incluye la versión leída,
+     * el cliente envía If-Match y el servidor rechaza (412) la escritura si otro la modificó entretanto.
+     */
     public MedicationRequest updateMedicationRequest(MedicationRequest medicationRequest) {
-        MethodOutcome outcome = fhirClient.update()
-                .resource(medicationRequest)
-                .execute();
+        String medicationRequestId = medicationRequest.getIdElement().getIdPart();
+
+        MethodOutcome outcome;
+        try {
+            outcome = fhirClient.update()
+                    .resource(medicationRequest)
+                    .prefer(PreferReturnEnum.REPRESENTATION)
+                    .execute();
+        } catch (PreconditionFailedException e) {
+            versionCache.remove(medicationRequestId);
+            throw new ResourceConflictException(
+                    "El tratamiento " + medicationRequestId + " fue modificado por otra operación; vuelva a intentarlo");
+        }
 
         MedicationRequest updatedRequest = (MedicationRequest) outcome.getResource();
         if (updatedRequest == null) {
             // Si el servidor no devuelve el recurso completo, lo recuperamos
-            updatedRequest = getMedicationRequestById(medicationRequest.getIdElement().getIdPart());
+            countFallbackRead("update");
+            updatedRequest = getMedicationRequestById(medicationRequestId);
         }
 
+        cache(updatedRequest);
         return updatedRequest;
     }
 
     public List<MedicationRequest> findMedicationRequestsByPatientId(String patientId) {
-        Bundle bundle = searchFhirBundle(patientId, null);
-        return extractMedicationRequestsFromBundle(bundle);
+        return searchMedicationRequests(patientId, null);
     }
 
     public List<MedicationRequest> findMedicationRequestsByPatientIdAndStatus(String patientId, String status) {
-        Bundle bundle = searchFhirBundle(patientId, status);
-        return extractMedicationRequestsFromBundle(bundle);
+        return searchMedicationRequests(patientId, status);
     }
 
-    private Bundle searchFhirBundle(String patientId, String status) {
+    private List<MedicationRequest> searchMedicationRequests(String patientId, String status) {
         try {
             var search = fhirClient.search()
                     .forResource(MedicationRequest.class)
@@ -83,22 +143,37 @@ public class FhirMedicationRequestRepository {
                 search.where(MedicationRequest.STATUS.exactly().code(status));
             }
 
-            return search.returnBundle(Bundle.class).execute();
+            // Se recorren todas las páginas del resultado, no solo la primera
+            try (Stream<MedicationRequest> medicationRequests =
+                         fhirSearchPager.stream(search.returnBundle(Bundle.class), MedicationRequest.class,
+                                 TREATMENT_LIST_ELEMENTS)) {
+                return medicationRequests.toList();
+            }
         } catch (ResourceNotFoundException e) {
-            return new Bundle(); // Bundle vacío
+            return new ArrayList<>(); // Sin resultados
+        } catch (FhirClientException e) {
+            throw e;
         } catch (Exception e) {
             throw new FhirClientException("Error en la búsqueda FHIR", e);
         }
     }
 
-    private List<MedicationRequest> extractMedicationRequestsFromBundle(Bundle bundle) {
-        if (bundle == null || bundle.getEntry() == null) {
-            return new ArrayList<>();
+    /**
+     * Guarda una copia del recurso completo en la caché de versiones (solo si trae versión)
+     */
+    private void cache(MedicationRequest medicationRequest) {
+        if (!medicationRequest.getIdElement().hasVersionIdPart()) {
+            return;
+        }
+        if (versionCache.size() >= MAX_CACHED_REQUESTS) {
+            versionCache.clear();
         }
+        versionCache.put(medicationRequest.getIdElement().getIdPart(), medicationRequest.copy());
+    }
 
-        return bundle.getEntry().stream()
-                .filter(entry -> entry.getResource() instanceof MedicationRequest)
-                .map(entry -> (MedicationRequest) entry.getResource())
-                .toList();
+    // Lecturas extra porque el servidor ignoró Prefer: return=representation
+    private void countFallbackRead(String operation) {
+        meterRegistry.counter("fhir.write.fallback.reads", "resource", "MedicationRequest", "operation", operation)
+                .increment();
     }
-}
\ No newline at end of file
+}
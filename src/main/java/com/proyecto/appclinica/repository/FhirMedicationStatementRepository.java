@@ -1,33 +1,60 @@
 package com.proyecto.appclinica.repository;
 
-import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PreferReturnEnum;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import lombok.RequiredArgsConstructor;
-import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Identifier;
 import org.hl7.fhir.r4.model.MedicationStatement;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 @RequiredArgsConstructor
 public class FhirMedicationStatementRepository {
 
     private final IGenericClient fhirClient;
 
-    public MedicationStatement saveMedicationStatement(MedicationStatement medicationStatement) {
-        // Guardar el recurso en el servidor FHIR
-        MethodOutcome outcome = fhirClient.create()
+    /**
+     * Crea los MedicationStatement en un único Bundle de tipo transaction. Cada entrada es una creación
+     * condicional por su identificador, por lo que reenviar el mismo lote no duplica recursos.
+     *
+     * @return las entradas de respuesta, en el mismo orden que los recursos enviados
+     */
+    public List<Bundle.BundleEntryComponent> saveMedicationStatements(List<MedicationStatement> medicationStatements) {
+        Bundle bundle = new Bundle();
+        bundle.setType(Bundle.BundleType.TRANSACTION);
+
+        for (MedicationStatement medicationStatement : medicationStatements) {
+            bundle.addEntry()
+                    .setResource(medicationStatement)
+                    .getRequest()
+                    .setMethod(Bundle.HTTPVerb.POST)
+                    .setUrl("MedicationStatement")
+                    .setIfNoneExist(identifierSearch(medicationStatement));
+        }
+
+        Bundle response = fhirClient.transaction()
+                .withBundle(bundle)
+                .execute();
+
+        return response.getEntry();
+    }
+
+    /**
+     * Crea un MedicationStatement de forma condicional (si no existe otro con el mismo identificador)
+     */
+    public void saveMedicationStatement(MedicationStatement medicationStatement) {
+        fhirClient.create()
                 .resource(medicationStatement)
+                .conditionalByUrl("MedicationStatement?" + identifierSearch(medicationStatement))
+                .prefer(PreferReturnEnum.MINIMAL) // El recurso creado no se usa: no hace falta que vuelva
                 .execute();
+    }
 
-        // Obtener el recurso guardado con su ID
-        if (outcome.getResource() != null) {
-            return (MedicationStatement) outcome.getResource();
-        } else {
-            IdType id = new IdType(outcome.getId().getValue());
-            return fhirClient.read()
-                    .resource(MedicationStatement.class)
-                    .withId(id)
-                    .execute();
-        }
+    private String identifierSearch(MedicationStatement medicationStatement) {
+        Identifier identifier = medicationStatement.getIdentifierFirstRep();
+        return "identifier=" + identifier.getSystem() + "|" + identifier.getValue();
     }
 }
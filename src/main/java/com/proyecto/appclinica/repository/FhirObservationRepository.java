@@ -1,12 +1,14 @@
 package com.proyecto.appclinica.repository;
 
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.PreferReturnEnum;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.gclient.DateClientParam;
-import ca.uhn.fhir.rest.gclient.ReferenceClientParam;
+import ca.uhn.fhir.rest.gclient.IQuery;
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
 import com.proyecto.appclinica.exception.ResourceNotFoundException;
 import com.proyecto.appclinica.model.dto.symptom.SymptomRecordDto;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.r4.model.Bundle;
@@ -15,11 +17,10 @@ import org.hl7.fhir.r4.model.Observation;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
-import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Date;
+import java.util.stream.Stream;
 
 @Slf4j
 @Repository
@@ -27,35 +28,33 @@ import java.util.List;
 public class FhirObservationRepository {
 
     private final IGenericClient fhirClient;
+    private final FhirSearchPager fhirSearchPager;
+    private final MeterRegistry meterRegistry;
 
     // Formatos de fecha/hora
-    private static final DateTimeFormatter ISO_DATE_TIME = DateTimeFormatter.ISO_DATE_TIME;
     private static final DateTimeFormatter DISPLAY_DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
-    public SymptomRecordDto createObservation(Observation observation) {
+    // Elementos que usan la proyección local y convertObservationToSymptomRecord (_elements)
+    private static final String[] SYMPTOM_ELEMENTS = {"subject", "effective", "note", "component"};
+
+    public Observation createObservation(Observation observation) {
         MethodOutcome outcome = fhirClient.create()
                 .resource(observation)
+                .prefer(PreferReturnEnum.REPRESENTATION)
                 .execute();
 
-        // Recuperamos la observación creada
-        String observationId = outcome.getId().getIdPart();
-        Observation createdObs = getObservationById(observationId);
-
-        // Convertimos a DTO
-        return convertObservationToSymptomRecord(createdObs);
+        // Solo se vuelve a leer si el servidor no devolvió la observación creada
+        return resourceOrRead(outcome, "create");
     }
 
-    public SymptomRecordDto updateObservation(Observation observation) {
+    public Observation updateObservation(Observation observation) {
         MethodOutcome outcome = fhirClient.update()
                 .resource(observation)
+                .prefer(PreferReturnEnum.REPRESENTATION)
                 .execute();
 
-        // Recuperamos la observación actualizada
-        String observationId = outcome.getId().getIdPart();
-        Observation updatedObs = getObservationById(observationId);
-
-        // Convertimos a DTO
-        return convertObservationToSymptomRecord(updatedObs);
+        // Solo se vuelve a leer si el servidor no devolvió la observación actualizada
+        return resourceOrRead(outcome, "update");
     }
 
     public Observation getObservationById(String observationId) {
@@ -76,134 +75,42 @@ public class FhirObservationRepository {
                 .execute();
     }
 
-    public List<SymptomRecordDto> findSymptomObservationsByPatient(String patientId) {
-        Bundle bundle = fhirClient.search()
-                .forResource(Observation.class)
-                .where(new ReferenceClientParam("subject").hasId("Patient/" + patientId))
-                .and(new TokenClientParam("code").exactly().code("symptom-diary"))
-                .returnBundle(Bundle.class)
-                .execute();
-
-        return extractObservationsFromBundle(bundle);
-    }
-
-    /**
-     * Obtiene síntomas que OCURRIERON hoy (por fecha efectiva del síntoma)
-     */
-    public List<SymptomRecordDto> getTodaySymptomsByPatient(String patientId) {
-        LocalDate today = LocalDate.now();
-        String startOfDay = today.atStartOfDay().format(ISO_DATE_TIME);
-        String endOfDay = today.atTime(LocalTime.MAX).format(ISO_DATE_TIME);
-
-        log.info("Buscando síntomas que OCURRIERON hoy ({}) para el paciente {}", today, patientId);
-
-        Bundle bundle = fhirClient.search()
-                .forResource(Observation.class)
-                .where(new ReferenceClientParam("subject").hasId("Patient/" + patientId))
-                .and(new TokenClientParam("code").exactly().code("symptom-diary"))
-                .and(Observation.DATE.afterOrEquals().second(startOfDay))
-                .and(Observation.DATE.beforeOrEquals().second(endOfDay))
-                .returnBundle(Bundle.class)
-                .execute();
-
-        log.info("Número de síntomas que ocurrieron hoy: {}", bundle.getTotal());
-
-        return extractObservationsFromBundle(bundle);
-    }
-
-    /**
-     * Obtiene síntomas REGISTRADOS hoy (por fecha de creación en el sistema)
-     */
-    public List<SymptomRecordDto> getTodayRegisteredSymptomsByPatient(String patientId) {
-        LocalDate today = LocalDate.now();
-        String startOfDay = today.atStartOfDay().format(ISO_DATE_TIME);
-        String endOfDay = today.atTime(LocalTime.MAX).format(ISO_DATE_TIME);
-
-        log.info("Buscando síntomas REGISTRADOS hoy ({}) para el paciente {}", today, patientId);
-
-        Bundle bundle = fhirClient.search()
-                .forResource(Observation.class)
-                .where(new ReferenceClientParam("subject").hasId("Patient/" + patientId))
-                .and(new TokenClientParam("code").exactly().code("symptom-diary"))
-                .and(new DateClientParam("_lastUpdated").afterOrEquals().second(startOfDay))
-                .and(new DateClientParam("_lastUpdated").beforeOrEquals().second(endOfDay))
-                .returnBundle(Bundle.class)
-                .execute();
-
-        log.info("Número de síntomas registrados hoy: {}", bundle.getTotal());
-
-        return extractObservationsFromBundle(bundle);
-    }
-
     /**
-     * Busca síntomas por fecha de OCURRENCIA (fecha efectiva del síntoma)
+     * Recorre, ordenadas por _lastUpdated, las observaciones de síntomas modificadas desde la fecha indicada
+     * (todas si es null). Alimenta la reconciliación de la proyección local symptom_observations.
      */
-    public List<SymptomRecordDto> findSymptomObservationsByPatientAndDateRange(String patientId, LocalDate startDate, LocalDate endDate) {
-        String startDateIso = startDate.atStartOfDay().format(ISO_DATE_TIME);
-        String endDateIso = endDate.atTime(LocalTime.MAX).format(ISO_DATE_TIME);
-
-        log.info("Buscando síntomas que OCURRIERON entre {} y {} para paciente {}", startDate, endDate, patientId);
-
-        Bundle bundle = fhirClient.search()
+    public Stream<Observation> streamSymptomObservationsUpdatedSince(Date since) {
+        IQuery<Bundle> query = fhirClient.search()
                 .forResource(Observation.class)
-                .where(new ReferenceClientParam("subject").hasId("Patient/" + patientId))
-                .and(new TokenClientParam("code").exactly().code("symptom-diary"))
-                .and(Observation.DATE.afterOrEquals().day(startDateIso))
-                .and(Observation.DATE.beforeOrEquals().day(endDateIso))
-                .returnBundle(Bundle.class)
-                .execute();
-
-        log.info("Número de síntomas encontrados por fecha de ocurrencia: {}", bundle.getTotal());
+                .where(new TokenClientParam("code").exactly().code("symptom-diary"))
+                .sort().ascending(new DateClientParam("_lastUpdated"))
+                .returnBundle(Bundle.class);
 
-        return extractObservationsFromBundle(bundle);
-    }
-
-    /**
-     * Busca síntomas por fecha de REGISTRO (fecha de creación en el sistema)
-     */
-    public List<SymptomRecordDto> findSymptomObservationsByPatientAndRegistrationDateRange(String patientId, LocalDate startDate, LocalDate endDate) {
-        String startDateIso = startDate.atStartOfDay().format(ISO_DATE_TIME);
-        String endDateIso = endDate.atTime(LocalTime.MAX).format(ISO_DATE_TIME);
-
-        log.info("Buscando síntomas REGISTRADOS entre {} y {} para paciente {}", startDate, endDate, patientId);
-
-        Bundle bundle = fhirClient.search()
-                .forResource(Observation.class)
-                .where(new ReferenceClientParam("subject").hasId("Patient/" + patientId))
-                .and(new TokenClientParam("code").exactly().code("symptom-diary"))
-                .and(new DateClientParam("_lastUpdated").afterOrEquals().day(startDateIso))
-                .and(new DateClientParam("_lastUpdated").beforeOrEquals().day(endDateIso))
-                .returnBundle(Bundle.class)
-                .execute();
-
-        log.info("Número de síntomas encontrados por fecha de registro: {}", bundle.getTotal());
+        if (since != null) {
+            query.and(new DateClientParam("_lastUpdated").afterOrEquals().millis(since));
+        }
 
-        return extractObservationsFromBundle(bundle);
+        return fhirSearchPager.stream(query, Observation.class, SYMPTOM_ELEMENTS);
     }
 
     /**
-     * Extrae observaciones individuales de un Bundle FHIR
+     * Devuelve la observación de la respuesta de escritura o, si el servidor ignoró
+     * Prefer: return=representation, la lee de nuevo
      */
-    private List<SymptomRecordDto> extractObservationsFromBundle(Bundle bundle) {
-        List<Observation> observations = new ArrayList<>();
-
-        if (bundle != null && bundle.getEntry() != null) {
-            for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
-                if (entry.getResource() instanceof Observation) {
-                    observations.add((Observation) entry.getResource());
-                }
-            }
+    private Observation resourceOrRead(MethodOutcome outcome, String operation) {
+        if (outcome.getResource() instanceof Observation observation) {
+            return observation;
         }
 
-        return observations.stream()
-                        .map(this::convertObservationToSymptomRecord)
-                        .toList();
+        meterRegistry.counter("fhir.write.fallback.reads", "resource", "Observation", "operation", operation)
+                .increment();
+        return getObservationById(outcome.getId().getIdPart());
     }
 
     /**
      * Convierte una única Observation FHIR a SymptomRecordDto.
      */
-    private SymptomRecordDto convertObservationToSymptomRecord(Observation obs) {
+    public SymptomRecordDto convertObservationToSymptomRecord(Observation obs) {
         SymptomRecordDto dto = new SymptomRecordDto();
 
         // Establecer el ID
@@ -0,0 +1,164 @@
+package com.proyecto.appclinica.repository;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.DateClientParam;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import com.proyecto.appclinica.exception.FhirClientException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.r4.model.*;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Reúne el historial clínico de un paciente (Patient, Condition, Procedure y MedicationRequest) en un solo Bundle.
+ * Se usa Patient/$everything, que lo devuelve en una sola petición; si el servidor no soporta la operación,
+ * se lanzan las búsquedas por tipo en paralelo.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class FhirPatientHistoryRepository {
+
+    private static final String EVERYTHING_OPERATION = "$everything";
+    private static final String HISTORY_TYPES = "Patient,Condition,Procedure,MedicationRequest";
+    private static final Set<Class<? extends Resource>> HISTORY_RESOURCE_TYPES =
+            Set.of(Patient.class, Condition.class, Procedure.class, MedicationRequest.class);
+
+    // Códigos con los que el servidor indica que no soporta $everything (o sus parámetros)
+    private static final Set<Integer> UNSUPPORTED_STATUSES = Set.of(400, 405, 501);
+    private static final DateClientParam LAST_UPDATED = new DateClientParam("_lastUpdated");
+
+    private final IGenericClient fhirClient;
+    private final FhirSearchPager fhirSearchPager;
+
+    // Si el servidor ya rechazó $everything se va directamente a las búsquedas por tipo
+    private final AtomicBoolean everythingUnsupported = new AtomicBoolean(false);
+
+    /**
+     * Devuelve un Bundle de tipo COLLECTION con el paciente y sus recursos clínicos en el rango de fechas.
+     */
+    public Bundle getPatientHistory(String patientId, LocalDate fromDate, LocalDate toDate) {
+        return getPatientHistory(patientId, fromDate, toDate, null);
+    }
+
+    /**
+     * Igual que {@link #getPatientHistory(String, LocalDate, LocalDate)}, pero solo con los recursos modificados
+     * desde la fecha indicada (_since / _lastUpdated, inclusive). En ese caso el Patient solo aparece si cambió.
+     */
+    public Bundle getPatientHistory(String patientId, LocalDate fromDate, LocalDate toDate, Date since) {
+        if (!everythingUnsupported.get()) {
+            try {
+                return getPatientEverything(patientId, fromDate, toDate, since);
+            } catch (BaseServerResponseException e) {
+                if (UNSUPPORTED_STATUSES.contains(e.getStatusCode())) {
+                    everythingUnsupported.set(true);
+                    log.warn("El servidor FHIR no soporta Patient/$everything ({}); se usarán búsquedas por tipo",
+                            e.getStatusCode());
+                } else {
+                    log.warn("Error en Patient/$everything para el paciente {}: {}; se usarán búsquedas por tipo",
+                            patientId, e.getMessage());
+                }
+            }
+        }
+
+        return searchPatientHistory(patientId, fromDate, toDate, since);
+    }
+
+    private Bundle getPatientEverything(String patientId, LocalDate fromDate, LocalDate toDate, Date since) {
+        Parameters parameters = new Parameters();
+        parameters.addParameter("start", new DateType(formatDate(fromDate)));
+        parameters.addParameter("end", new DateType(formatDate(toDate)));
+        parameters.addParameter("_type", new StringType(HISTORY_TYPES));
+        if (since != null) {
+            parameters.addParameter("_since", new InstantType(since));
+        }
+
+        Bundle firstPage = fhirClient.operation()
+                .onInstance(new IdType("Patient", patientId))
+                .named(EVERYTHING_OPERATION)
+                .withParameters(parameters)
+                .useHttpGet()
+                .returnResourceType(Bundle.class)
+                .execute();
+
+        // $everything también pagina; se filtra por tipo por si el servidor ignora _type
+        try (Stream<Resource> resources = fhirSearchPager.stream(firstPage, Resource.class)) {
+            return toCollection(resources.filter(resource -> HISTORY_RESOURCE_TYPES.contains(resource.getClass())));
+        }
+    }
+
+    private Bundle searchPatientHistory(String patientId, LocalDate fromDate, LocalDate toDate, Date since) {
+        String fromDateStr = formatDate(fromDate);
+        String toDateStr = formatDate(toDate);
+
+        // Las cuatro peticiones salen a la vez; solo se espera a la más lenta
+        CompletableFuture<Bundle> patient = fhirSearchPager.executeAsync(changedSince(fhirClient.search()
+                .forResource(Patient.class)
+                .where(Patient.RES_ID.exactly().code(patientId))
+                .returnBundle(Bundle.class), since));
+        CompletableFuture<Bundle> conditions = fhirSearchPager.executeAsync(changedSince(fhirClient.search()
+                .forResource(Condition.class)
+                .where(Condition.PATIENT.hasId(patientId))
+                .returnBundle(Bundle.class), since));
+        CompletableFuture<Bundle> procedures = fhirSearchPager.executeAsync(changedSince(fhirClient.search()
+                .forResource(Procedure.class)
+                .where(Procedure.PATIENT.hasId(patientId))
+                .and(Procedure.DATE.afterOrEquals().day(fromDateStr))
+                .and(Procedure.DATE.beforeOrEquals().day(toDateStr))
+                .returnBundle(Bundle.class), since));
+        CompletableFuture<Bundle> treatments = fhirSearchPager.executeAsync(changedSince(fhirClient.search()
+                .forResource(MedicationRequest.class)
+                .where(MedicationRequest.PATIENT.hasId(patientId))
+                .and(MedicationRequest.AUTHOREDON.afterOrEquals().day(fromDateStr))
+                .and(MedicationRequest.AUTHOREDON.beforeOrEquals().day(toDateStr))
+                .returnBundle(Bundle.class), since));
+
+        Stream<Resource> resources = Stream.of(
+                        stream(patient, Patient.class),
+                        stream(conditions, Condition.class),
+                        stream(procedures, Procedure.class),
+                        stream(treatments, MedicationRequest.class))
+                .flatMap(s -> s);
+
+        Bundle history = toCollection(resources);
+        // En una consulta incremental el Patient solo viene si cambió
+        if (since == null && (history.getEntry().isEmpty()
+                || !(history.getEntryFirstRep().getResource() instanceof Patient))) {
+            throw new FhirClientException("No se encontró el paciente " + patientId + " en el servidor FHIR");
+        }
+        return history;
+    }
+
+    private IQuery<Bundle> changedSince(IQuery<Bundle> query, Date since) {
+        return since == null ? query : query.and(LAST_UPDATED.afterOrEquals().millis(since));
+    }
+
+    private <T extends Resource> Stream<Resource> stream(CompletableFuture<Bundle> firstPage, Class<T> resourceType) {
+        try {
+            return fhirSearchPager.stream(firstPage.join(), resourceType).map(Resource.class::cast);
+        } catch (CompletionException e) {
+            throw new FhirClientException("Error al obtener el historial del paciente del servidor FHIR", e.getCause());
+        }
+    }
+
+    private Bundle toCollection(Stream<Resource> resources) {
+        Bundle combined = new Bundle();
+        combined.setType(Bundle.BundleType.COLLECTION);
+        resources.forEach(resource -> combined.addEntry().setResource(resource));
+        return combined;
+    }
+
+    private String formatDate(LocalDate date) {
+        return date.format(DateTimeFormatter.ISO_LOCAL_DATE);
+    }
+}
@@ -1,27 +1,82 @@
 package com.proyecto.appclinica.repository;
 
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.SummaryEnum;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Patient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Repository;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Acceso a los Patient de FHIR por identificador (DNI). Las búsquedas se guardan en una caché de dos niveles:
+ * memoria del nodo (TTL corto) y Redis (compartida entre nodos). Solo se cachean pacientes encontrados.
+ */
+@Slf4j
 @Repository
 @RequiredArgsConstructor
 public class FhirPatientRepository {
+    private static final String REDIS_PATIENT_PREFIX = "patient_by_identifier:";
+    // Canal por el que se avisa al resto de nodos que descarten su copia en memoria
+    private static final String INVALIDATION_CHANNEL = "patient_cache:invalidate";
+    private static final int MAX_LOCAL_ENTRIES = 10_000;
+
     private final IGenericClient fhirClient;
+    private final FhirContext fhirContext;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final Map<String, CachedPatient> localCache = new ConcurrentHashMap<>();
+
+    @Value("${fhir.patient-cache.local-ttl-seconds:60}")
+    private long localTtlSeconds;
 
+    @Value("${fhir.patient-cache.redis-ttl-seconds:600}")
+    private long redisTtlSeconds;
+
+    @PostConstruct
+    public void subscribeInvalidations() {
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> localCache.remove(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    /**
+     * Comprueba si existe un paciente con el identificador. Si no está en caché usa _summary=count,
+     * que no transfiere el recurso.
+     */
     public boolean patientExistsByIdentifier(String identifier) {
+        if (getCachedPatient(identifier) != null) {
+            return true;
+        }
+
         Bundle bundle = fhirClient.search()
                 .forResource(Patient.class)
                 .where(Patient.IDENTIFIER.exactly().code(identifier))
+                .summaryMode(SummaryEnum.COUNT)
                 .returnBundle(Bundle.class)
                 .execute();
 
-        return !bundle.getEntry().isEmpty();
+        return bundle.getTotal() > 0;
     }
 
     public Patient getPatientByIdentifier(String identifier) {
+        Patient cached = getCachedPatient(identifier);
+        if (cached != null) {
+            return cached;
+        }
+
         Bundle bundle = fhirClient.search()
                 .forResource(Patient.class)
                 .where(Patient.IDENTIFIER.exactly().code(identifier))
@@ -32,7 +87,68 @@ public class FhirPatientRepository {
             return null;
         }
 
-        return (Patient) bundle.getEntryFirstRep().getResource();
+        Patient patient = (Patient) bundle.getEntryFirstRep().getResource();
+        cachePatient(identifier, patient);
+        return patient.copy();
+    }
+
+    /**
+     * Descarta el paciente de la caché en todos los nodos (usar tras modificar el Patient en FHIR)
+     */
+    public void evictPatient(String identifier) {
+        localCache.remove(identifier);
+        try {
+            stringRedisTemplate.delete(REDIS_PATIENT_PREFIX + identifier);
+            stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, identifier);
+        } catch (Exception e) {
+            log.warn("No se pudo invalidar en Redis el paciente {}; expirará por TTL", identifier, e);
+        }
+    }
+
+    /**
+     * Busca el paciente en memoria y, si no está, en Redis. Devuelve una copia: Patient es mutable.
+     */
+    private Patient getCachedPatient(String identifier) {
+        CachedPatient local = localCache.get(identifier);
+        if (local != null && local.expiresAt() > System.currentTimeMillis()) {
+            return local.patient().copy();
+        }
+
+        String json;
+        try {
+            json = stringRedisTemplate.opsForValue().get(REDIS_PATIENT_PREFIX + identifier);
+        } catch (Exception e) {
+            log.warn("No se pudo leer la caché de pacientes en Redis; se consulta FHIR", e);
+            return null;
+        }
+        if (json == null) {
+            return null;
+        }
+
+        Patient patient = fhirContext.newJsonParser().parseResource(Patient.class, json);
+        putLocal(identifier, patient);
+        return patient.copy();
+    }
+
+    private void cachePatient(String identifier, Patient patient) {
+        putLocal(identifier, patient.copy());
+        try {
+            stringRedisTemplate.opsForValue().set(REDIS_PATIENT_PREFIX + identifier,
+                    fhirContext.newJsonParser().encodeResourceToString(patient), Duration.ofSeconds(redisTtlSeconds));
+        } catch (Exception e) {
+            log.warn("No se pudo guardar el paciente {} en la caché de Redis", identifier, e);
+        }
+    }
+
+    private void putLocal(String identifier, Patient patient) {
+        if (localCache.size() >= MAX_LOCAL_ENTRIES) {
+            long now = System.currentTimeMillis();
+            localCache.values().removeIf(entry -> entry.expiresAt() <= now);
+        }
+        localCache.put(identifier, new CachedPatient(patient, System.currentTimeMillis() + localTtlSeconds * 1000));
+    }
+
+    private record CachedPatient(Patient patient, long expiresAt) {
     }
 
     // Métodos para trabajar con AuditEvent para guardar y verificar códigos
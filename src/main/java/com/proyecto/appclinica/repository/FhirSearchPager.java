@@ -0,0 +1,188 @@
+package com.proyecto.appclinica.repository;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import com.proyecto.appclinica.constant.AsyncExecutorConstants;
+import com.proyecto.appclinica.exception.FhirClientException;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Recorre todas las páginas de una búsqueda FHIR siguiendo los enlaces "next". El Stream es perezoso:
+ * solo mantiene en memoria la página actual y la siguiente, que se descarga mientras se consume la actual.
+ * Si el consumidor se detiene antes (p. ej. con {@code limit}), no se piden más páginas.
+ */
+@Slf4j
+@Component
+public class FhirSearchPager {
+    // Etiqueta que el servidor añade a los recursos recortados con _elements
+    private static final String SUBSETTED_SYSTEM = "http://terminology.hl7.org/CodeSystem/v3-ObservationValue";
+    private static final String SUBSETTED_CODE = "SUBSETTED";
+
+    private final IGenericClient fhirClient;
+    private final TaskExecutor prefetchExecutor;
+
+    // Tipos de recurso para los que el servidor rechazó _elements: se piden completos sin volver a intentarlo
+    private final Set<String> elementsRejected = ConcurrentHashMap.newKeySet();
+    // Tipos de recurso para los que ya se avisó de que el servidor ignora _elements
+    private final Set<String> elementsIgnored = ConcurrentHashMap.newKeySet();
+
+    @Value("${fhir.search.page-size:100}")
+    private int pageSize;
+
+    public FhirSearchPager(IGenericClient fhirClient,
+                           @Qualifier(AsyncExecutorConstants.FHIR_PREFETCH_EXECUTOR) TaskExecutor prefetchExecutor) {
+        this.fhirClient = fhirClient;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * Ejecuta la búsqueda (la primera página de forma inmediata) y devuelve sus recursos del tipo indicado.
+     * Las entradas de otros tipos (p. ej. incluidas con _include) se omiten.
+     */
+    public <T extends Resource> Stream<T> stream(IQuery<Bundle> query, Class<T> resourceType) {
+        return stream(query, resourceType, new String[0]);
+    }
+
+    /**
+     * Igual que {@link #stream(IQuery, Class)}, pidiendo solo los elementos indicados (_elements). Si el servidor
+     * rechaza el parámetro se repite la búsqueda con los recursos completos; si lo ignora, el resultado es el mismo
+     * con más datos transferidos.
+     */
+    public <T extends Resource> Stream<T> stream(IQuery<Bundle> query, Class<T> resourceType, String... elements) {
+        String typeName = resourceType.getSimpleName();
+        query.count(pageSize);
+
+        Bundle firstPage;
+        if (elements.length == 0 || elementsRejected.contains(typeName)) {
+            firstPage = query.execute();
+        } else {
+            try {
+                firstPage = query.elementsSubset(elements).execute();
+                warnIfIgnored(firstPage, typeName);
+            } catch (InvalidRequestException e) {
+                log.warn("El servidor FHIR rechazó _elements para {}; se piden los recursos completos", typeName);
+                elementsRejected.add(typeName);
+                firstPage = query.elementsSubset().execute();
+            }
+        }
+
+        return stream(firstPage, resourceType);
+    }
+
+    /**
+     * Recorre las páginas a partir de una primera página ya obtenida (p. ej. la respuesta de una operación
+     * como $everything o de {@link #executeAsync(IQuery)}).
+     */
+    public <T extends Resource> Stream<T> stream(Bundle firstPage, Class<T> resourceType) {
+        PagingIterator<T> iterator = new PagingIterator<>(firstPage, resourceType);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(iterator::cancelPrefetch);
+    }
+
+    /**
+     * Pide la primera página de la búsqueda en segundo plano, para lanzar varias búsquedas en paralelo.
+     * Las páginas siguientes se recorren después con {@link #stream(Bundle, Class)}.
+     */
+    public CompletableFuture<Bundle> executeAsync(IQuery<Bundle> query) {
+        query.count(pageSize);
+        return CompletableFuture.supplyAsync(query::execute, prefetchExecutor);
+    }
+
+    private void warnIfIgnored(Bundle page, String typeName) {
+        if (page.getEntry().isEmpty() || elementsIgnored.contains(typeName)) {
+            return;
+        }
+
+        Resource resource = page.getEntryFirstRep().getResource();
+        if (resource != null && resource.getMeta().getTag(SUBSETTED_SYSTEM, SUBSETTED_CODE) == null
+                && elementsIgnored.add(typeName)) {
+            log.info("El servidor FHIR ignora _elements para {}; se reciben los recursos completos", typeName);
+        }
+    }
+
+    private Bundle loadNextPage(Bundle page) {
+        return fhirClient.loadPage()
+                .next(page)
+                .execute();
+    }
+
+    private class PagingIterator<T extends Resource> implements Iterator<T> {
+        private final Class<T> resourceType;
+        private Iterator<Bundle.BundleEntryComponent> entries;
+        private CompletableFuture<Bundle> nextPage;
+        private T next;
+
+        PagingIterator(Bundle firstPage, Class<T> resourceType) {
+            this.resourceType = resourceType;
+            setPage(firstPage);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (entries.hasNext()) {
+                    Resource resource = entries.next().getResource();
+                    if (resourceType.isInstance(resource)) {
+                        next = resourceType.cast(resource);
+                    }
+                } else if (nextPage != null) {
+                    setPage(awaitNextPage());
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T resource = next;
+            next = null;
+            return resource;
+        }
+
+        void cancelPrefetch() {
+            if (nextPage != null) {
+                nextPage.cancel(false);
+            }
+        }
+
+        private void setPage(Bundle page) {
+            entries = page.getEntry().iterator();
+
+            // La siguiente página se pide en segundo plano mientras se consume esta
+            nextPage = page.getLink(Bundle.LINK_NEXT) != null
+                    ? CompletableFuture.supplyAsync(() -> loadNextPage(page), prefetchExecutor)
+                    : null;
+        }
+
+        private Bundle awaitNextPage() {
+            try {
+                return nextPage.join();
+            } catch (CompletionException e) {
+                throw new FhirClientException("Error al obtener la siguiente página de la búsqueda FHIR", e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.proyecto.appclinica.repository;
+
+import com.proyecto.appclinica.model.dto.treatment.medication.DailyAdherenceDto;
+import com.proyecto.appclinica.model.entity.MedicationAdherenceDailyEntity;
+import com.proyecto.appclinica.model.entity.MedicationAdherenceDailyId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface MedicationAdherenceRepository extends JpaRepository<MedicationAdherenceDailyEntity, MedicationAdherenceDailyId> {
+
+    // Suma (o resta) los conteos indicados en la fila del día, creándola si no existe
+    @Modifying
+    @Query(value = """
+            INSERT INTO medication_adherence_daily (patient_id, day, medication_request_id, completed, not_taken, intended)
+            VALUES (:patientId, :day, COALESCE(:medicationRequestId, ''), :completed, :notTaken, :intended)
+            ON CONFLICT (patient_id, day, medication_request_id) DO UPDATE SET
+                completed = medication_adherence_daily.completed + EXCLUDED.completed,
+                not_taken = medication_adherence_daily.not_taken + EXCLUDED.not_taken,
+                intended = medication_adherence_daily.intended + EXCLUDED.intended
+            """, nativeQuery = true)
+    void applyDelta(@Param("patientId") String patientId,
+                    @Param("day") LocalDate day,
+                    @Param("medicationRequestId") String medicationRequestId,
+                    @Param("completed") int completed,
+                    @Param("notTaken") int notTaken,
+                    @Param("intended") int intended);
+
+    // Bloquea las dosis del rango hasta el final de la transacción. Los cambios de estado (applyDelta y los barridos
+    // NOT_TAKEN) modifican la dosis antes de sumar su delta, así que tras el bloqueo no queda ninguno en curso
+    // sobre estas dosis y recompute no puede sobrescribir un delta con conteos de una instantánea anterior
+    @Query(value = """
+            SELECT m.id FROM medications m
+            WHERE m.medication_request_id IN (:medicationRequestIds)
+              AND m.time_of_taking >= :start AND m.time_of_taking < :end
+            ORDER BY m.id
+            FOR UPDATE
+            """, nativeQuery = true)
+    List<Long> lockDoses(@Param("medicationRequestIds") Collection<String> medicationRequestIds,
+                         @Param("start") Timestamp start,
+                         @Param("end") Timestamp end);
+
+    // Recalcula desde medications las filas de los MedicationRequest indicados dentro del rango
+    // (por time_of_taking, que es la columna indexada; date es su día)
+    @Modifying
+    @Query(value = """
+            INSERT INTO medication_adherence_daily (patient_id, day, medication_request_id, completed, not_taken, intended)
+            SELECT m.patient_id, m.date, m.medication_request_id,
+                   count(*) FILTER (WHERE m.status = 'COMPLETED'),
+                   count(*) FILTER (WHERE m.status = 'NOT_TAKEN'),
+                   count(*) FILTER (WHERE m.status = 'INTENDED')
+            FROM medications m
+            WHERE m.medication_request_id IN (:medicationRequestIds)
+              AND m.time_of_taking >= :start AND m.time_of_taking < :end
+            GROUP BY m.patient_id, m.date, m.medication_request_id
+            ON CONFLICT (patient_id, day, medication_request_id) DO UPDATE SET
+                completed = EXCLUDED.completed,
+                not_taken = EXCLUDED.not_taken,
+                intended = EXCLUDED.intended
+            """, nativeQuery = true)
+    void recompute(@Param("medicationRequestIds") Collection<String> medicationRequestIds,
+                   @Param("start") Timestamp start,
+                   @Param("end") Timestamp end);
+
+    // Elimina las filas del rango que ya no tienen dosis (p. ej. tras acortar un tratamiento)
+    @Modifying
+    @Query(value = """
+            DELETE FROM medication_adherence_daily a
+            WHERE a.medication_request_id IN (:medicationRequestIds)
+              AND a.day BETWEEN :startDate AND :endDate
+              AND NOT EXISTS (SELECT 1 FROM medications m
+                              WHERE m.medication_request_id = a.medication_request_id
+                                AND m.time_of_taking >= a.day
+                                AND m.time_of_taking < a.day + 1)
+            """, nativeQuery = true)
+    void deleteWithoutDoses(@Param("medicationRequestIds") Collection<String> medicationRequestIds,
+                            @Param("startDate") LocalDate startDate,
+                            @Param("endDate") LocalDate endDate);
+
+    // Adherencia diaria del paciente sumando todos sus tratamientos
+    @Query("SELECT new com.proyecto.appclinica.model.dto.treatment.medication.DailyAdherenceDto(" +
+            "a.id.day, SUM(a.completed), SUM(a.notTaken), SUM(a.intended)) " +
+            "FROM MedicationAdherenceDailyEntity a WHERE a.id.patientId = :patientId " +
+            "AND a.id.day BETWEEN :startDate AND :endDate GROUP BY a.id.day ORDER BY a.id.day")
+    List<DailyAdherenceDto> findDailyAdherence(@Param("patientId") String patientId,
+                                               @Param("startDate") LocalDate startDate,
+                                               @Param("endDate") LocalDate endDate);
+}
@@ -1,29 +1,228 @@
 package com.proyecto.appclinica.repository;
 
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationDeadlineView;
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationDoseView;
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationReminderView;
 import com.proyecto.appclinica.model.entity.EMedicationStatementStatus;
 import com.proyecto.appclinica.model.entity.MedicationEntity;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 @Repository
 public interface MedicationRepository extends JpaRepository<MedicationEntity, Long> {
 
-    List<MedicationEntity> findAllByPatientIdAndTimeOfTakingBetween(
-            String patientId, Timestamp startTime, Timestamp endTime);
+    // Listado de dosis del paciente ya ordenado por la base de datos, sin cargar entidades gestionadas
+    @Query("SELECT new com.proyecto.appclinica.model.dto.treatment.medication.MedicationDoseView(" +
+            "m.id, m.nameMedicine, m.doseValue, m.doseUnit, m.timeOfTaking, m.date, m.status, m.medicationRequestId) " +
+            "FROM MedicationEntity m WHERE m.patientId = :patientId " +
+            "AND m.timeOfTaking BETWEEN :startTime AND :endTime ORDER BY m.timeOfTaking, m.id")
+    List<MedicationDoseView> findDoseViews(@Param("patientId") String patientId,
+                                           @Param("startTime") Timestamp startTime,
+                                           @Param("endTime") Timestamp endTime);
+
+    // Página de dosis del paciente posterior al cursor (timeOfTaking, id); el estado es opcional
+    @Query("SELECT new com.proyecto.appclinica.model.dto.treatment.medication.MedicationDoseView(" +
+            "m.id, m.nameMedicine, m.doseValue, m.doseUnit, m.timeOfTaking, m.date, m.status, m.medicationRequestId) " +
+            "FROM MedicationEntity m WHERE m.patientId = :patientId " +
+            "AND m.timeOfTaking BETWEEN :startTime AND :endTime " +
+            "AND (:status IS NULL OR m.status = :status) " +
+            "AND (m.timeOfTaking > :afterTime OR (m.timeOfTaking = :afterTime AND m.id > :afterId)) " +
+            "ORDER BY m.timeOfTaking, m.id")
+    List<MedicationDoseView> findDoseViewsAfter(@Param("patientId") String patientId,
+                                                @Param("startTime") Timestamp startTime,
+                                                @Param("endTime") Timestamp endTime,
+                                                @Param("status") EMedicationStatementStatus status,
+                                                @Param("afterTime") Timestamp afterTime,
+                                                @Param("afterId") Long afterId,
+                                                Limit limit);
+
+    // Todas las dosis del rango leídas por bloques desde el cursor JDBC (requiere transacción abierta)
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new com.proyecto.appclinica.model.dto.treatment.medication.MedicationDoseView(" +
+            "m.id, m.nameMedicine, m.doseValue, m.doseUnit, m.timeOfTaking, m.date, m.status, m.medicationRequestId) " +
+            "FROM MedicationEntity m WHERE m.patientId = :patientId " +
+            "AND m.timeOfTaking BETWEEN :startTime AND :endTime " +
+            "AND (:status IS NULL OR m.status = :status) " +
+            "ORDER BY m.timeOfTaking, m.id")
+    Stream<MedicationDoseView> streamDoseViews(@Param("patientId") String patientId,
+                                               @Param("startTime") Timestamp startTime,
+                                               @Param("endTime") Timestamp endTime,
+                                               @Param("status") EMedicationStatementStatus status);
 
     Optional<MedicationEntity> findById(Long id);
+
+    // Bloquea la fila para que dos cambios de estado simultáneos no descuadren el resumen de adherencia
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT m FROM MedicationEntity m WHERE m.id = :id")
+    Optional<MedicationEntity> findByIdForUpdate(@Param("id") Long id);
     
     List<MedicationEntity> findByMedicationRequestId(String medicationRequestId);
 
+    List<MedicationEntity> findAllByMedicationRequestIdAndTimeOfTakingAfter(String medicationRequestId, Timestamp time);
+
+    Optional<MedicationEntity> findByMedicationRequestIdAndTimeOfTaking(String medicationRequestId, Timestamp timeOfTaking);
+
     List<MedicationEntity> findAllByStatusAndTimeOfTakingBetween(
             EMedicationStatementStatus status, Timestamp startTime, Timestamp endTime
     );
 
-    List<MedicationEntity> findAllByPatientIdAndTimeOfTakingBetweenAndStatus(
-            String patientId, Timestamp startTime, Timestamp endTime, EMedicationStatementStatus status
-    );
+    /**
+     * Marca como NOT_TAKEN, en una sola sentencia, todas las dosis pendientes del día cuya ventana de
+     * tolerancia (configuración del paciente o 30 minutos por defecto) ya ha vencido.
+     * Solo procesa los pacientes de las particiones indicadas (ver MedicationPartitionService).
+     * En la misma sentencia traslada los conteos de medication_adherence_daily de INTENDED a NOT_TAKEN.
+     *
+     * @return IDs de las dosis actualizadas
+     */
+    @Transactional
+    @Query(value = """
+            WITH expired AS (
+                UPDATE medications m SET status = 'NOT_TAKEN'
+                WHERE m.status = 'INTENDED'
+                  AND m.time_of_taking >= :startOfDay
+                  AND m.time_of_taking < :now
+                  AND mod(hashtext(m.patient_id) & 2147483647, :partitionCount) IN (:partitions)
+                  AND m.time_of_taking < CAST(:now AS timestamp) - make_interval(mins => COALESCE(
+                        (SELECT ms.tolerance_window_minutes
+                         FROM user_settings us
+                         JOIN medication_settings ms ON ms.id = us.medication_settings_id
+                         WHERE us.patient_id = m.patient_id
+                         LIMIT 1), 30))
+                RETURNING m.id, m.patient_id, m.date, m.medication_request_id
+            ),
+            adherence AS (
+                INSERT INTO medication_adherence_daily (patient_id, day, medication_request_id, completed, not_taken, intended)
+                SELECT patient_id, date, COALESCE(medication_request_id, ''), 0, count(*), -count(*)
+                FROM expired
+                GROUP BY patient_id, date, COALESCE(medication_request_id, '')
+                ON CONFLICT (patient_id, day, medication_request_id) DO UPDATE SET
+                    not_taken = medication_adherence_daily.not_taken + EXCLUDED.not_taken,
+                    intended = medication_adherence_daily.intended + EXCLUDED.intended
+            )
+            SELECT id FROM expired
+            """, nativeQuery = true)
+    List<Long> markExpiredAsNotTaken(@Param("startOfDay") Timestamp startOfDay,
+                                     @Param("now") Timestamp now,
+                                     @Param("partitionCount") int partitionCount,
+                                     @Param("partitions") Collection<Integer> partitions);
+
+    /**
+     * Marca como NOT_TAKEN las dosis indicadas que siguen pendientes. El filtro por estado evita
+     * sobrescribir dosis que el paciente registró mientras vencía su plazo. También actualiza
+     * medication_adherence_daily en la misma sentencia.
+     *
+     * @return IDs de las dosis actualizadas
+     */
+    @Transactional
+    @Query(value = """
+            WITH expired AS (
+                UPDATE medications SET status = 'NOT_TAKEN'
+                WHERE id IN (:ids) AND status = 'INTENDED'
+                RETURNING id, patient_id, date, medication_request_id
+            ),
+            adherence AS (
+                INSERT INTO medication_adherence_daily (patient_id, day, medication_request_id, completed, not_taken, intended)
+                SELECT patient_id, date, COALESCE(medication_request_id, ''), 0, count(*), -count(*)
+                FROM expired
+                GROUP BY patient_id, date, COALESCE(medication_request_id, '')
+                ON CONFLICT (patient_id, day, medication_request_id) DO UPDATE SET
+                    not_taken = medication_adherence_daily.not_taken + EXCLUDED.not_taken,
+                    intended = medication_adherence_daily.intended + EXCLUDED.intended
+            )
+            SELECT id FROM expired
+            """, nativeQuery = true)
+    List<Long> markAsNotTaken(@Param("ids") Collection<Long> ids);
+
+    // Plazos de vencimiento de las dosis pendientes programadas dentro del rango, para las particiones indicadas
+    @Query(value = """
+            SELECT m.id AS "id",
+                   m.medication_request_id AS "medicationRequestId",
+                   m.time_of_taking + make_interval(mins => COALESCE(
+                        (SELECT ms.tolerance_window_minutes
+                         FROM user_settings us
+                         JOIN medication_settings ms ON ms.id = us.medication_settings_id
+                         WHERE us.patient_id = m.patient_id
+                         LIMIT 1), 30)) AS "deadline"
+            FROM medications m
+            WHERE m.status = 'INTENDED'
+              AND m.time_of_taking >= :from
+              AND m.time_of_taking < :until
+              AND mod(hashtext(m.patient_id) & 2147483647, :partitionCount) IN (:partitions)
+            """, nativeQuery = true)
+    List<MedicationDeadlineView> findDeadlinesBetween(@Param("from") Timestamp from,
+                                                      @Param("until") Timestamp until,
+                                                      @Param("partitionCount") int partitionCount,
+                                                      @Param("partitions") Collection<Integer> partitions);
+
+    // Igual que findDeadlinesBetween, limitado a un MedicationRequest
+    @Query(value = """
+            SELECT m.id AS "id",
+                   m.medication_request_id AS "medicationRequestId",
+                   m.time_of_taking + make_interval(mins => COALESCE(
+                        (SELECT ms.tolerance_window_minutes
+                         FROM user_settings us
+                         JOIN medication_settings ms ON ms.id = us.medication_settings_id
+                         WHERE us.patient_id = m.patient_id
+                         LIMIT 1), 30)) AS "deadline"
+            FROM medications m
+            WHERE m.status = 'INTENDED'
+              AND m.medication_request_id = :medicationRequestId
+              AND m.time_of_taking >= :from
+              AND m.time_of_taking < :until
+              AND mod(hashtext(m.patient_id) & 2147483647, :partitionCount) IN (:partitions)
+            """, nativeQuery = true)
+    List<MedicationDeadlineView> findDeadlinesByMedicationRequestId(@Param("medicationRequestId") String medicationRequestId,
+                                                                    @Param("from") Timestamp from,
+                                                                    @Param("until") Timestamp until,
+                                                                    @Param("partitionCount") int partitionCount,
+                                                                    @Param("partitions") Collection<Integer> partitions);
+
+    // Dosis pendientes ya programadas (hora de toma dentro del rango) con la configuración de recordatorios
+    // del paciente (10 minutos y 3 intentos por defecto), para las particiones indicadas
+    @Query(value = """
+            SELECT m.id AS "id",
+                   m.time_of_taking AS "timeOfTaking",
+                   COALESCE(ms.reminder_frequency_minutes, 10) AS "reminderFrequencyMinutes",
+                   COALESCE(ms.max_reminder_attempts, 3) AS "maxReminderAttempts"
+            FROM medications m
+            LEFT JOIN LATERAL (
+                SELECT s.reminder_frequency_minutes, s.max_reminder_attempts
+                FROM user_settings us
+                JOIN medication_settings s ON s.id = us.medication_settings_id
+                WHERE us.patient_id = m.patient_id
+                LIMIT 1) ms ON TRUE
+            WHERE m.status = 'INTENDED'
+              AND m.time_of_taking >= :from
+              AND m.time_of_taking <= :until
+              AND mod(hashtext(m.patient_id) & 2147483647, :partitionCount) IN (:partitions)
+            """, nativeQuery = true)
+    List<MedicationReminderView> findReminderCandidates(@Param("from") Timestamp from,
+                                                        @Param("until") Timestamp until,
+                                                        @Param("partitionCount") int partitionCount,
+                                                        @Param("partitions") Collection<Integer> partitions);
+
+    // Crea las particiones mensuales de medications que falten hasta monthsAhead meses (función de V1)
+    @Transactional
+    @Query(value = "SELECT ensure_medications_partitions(:monthsAhead)", nativeQuery = true)
+    Integer ensureMonthlyPartitions(@Param("monthsAhead") int monthsAhead);
 }
@@ -0,0 +1,51 @@
+package com.proyecto.appclinica.repository;
+
+import com.proyecto.appclinica.model.entity.MedicationScheduleEntity;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface MedicationScheduleRepository extends JpaRepository<MedicationScheduleEntity, Long> {
+
+    Optional<MedicationScheduleEntity> findByMedicationRequestId(String medicationRequestId);
+
+    // Bloquea la pauta mientras se materializan sus dosis
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM MedicationScheduleEntity s WHERE s.id = :id")
+    Optional<MedicationScheduleEntity> findByIdForUpdate(@Param("id") Long id);
+
+    // Pautas cuyo horizonte materializado no alcanza todavía el horizonte objetivo ni el fin del tratamiento,
+    // solo de los pacientes de las particiones indicadas. Se bloquean (omitiendo las que ya lo están, p. ej. por
+    // materializeVirtualDose) para que nunca se generen dos veces los mismos días
+    @Query(value = """
+            SELECT * FROM medication_schedules s
+            WHERE s.materialized_until < :horizon
+              AND s.materialized_until < s.end_date
+              AND mod(hashtext(s.patient_id) & 2147483647, :partitionCount) IN (:partitions)
+            ORDER BY s.id
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<MedicationScheduleEntity> findPendingExtension(@Param("horizon") LocalDate horizon,
+                                                        @Param("partitionCount") int partitionCount,
+                                                        @Param("partitions") Collection<Integer> partitions,
+                                                        Pageable pageable);
+
+    // Pautas del paciente con dosis no materializadas dentro del rango consultado
+    @Query("SELECT s FROM MedicationScheduleEntity s WHERE s.patientId = :patientId " +
+            "AND s.materializedUntil < :endDate AND s.endDate >= :startDate AND s.startDateTime <= :endDateTime")
+    List<MedicationScheduleEntity> findWithVirtualDoses(@Param("patientId") String patientId,
+                                                        @Param("startDate") LocalDate startDate,
+                                                        @Param("endDate") LocalDate endDate,
+                                                        @Param("endDateTime") LocalDateTime endDateTime);
+}
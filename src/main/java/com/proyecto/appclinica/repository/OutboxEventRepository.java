@@ -0,0 +1,57 @@
+package com.proyecto.appclinica.repository;
+
+import com.proyecto.appclinica.model.entity.OutboxEventEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEventEntity, Long> {
+
+    // Reclama un lote de eventos disponibles: SKIP LOCKED reparte filas distintas entre nodos sin esperas y
+    // la concesión (locked_until) evita que otro nodo las vuelva a tomar mientras se despachan.
+    // Los eventos de tipos ordenados solo se reclaman cuando no queda uno anterior pendiente del mismo agregado,
+    // así se aplican uno tras otro y en orden aunque haya varios nodos (los agotados no bloquean)
+    @Transactional
+    @Query(value = """
+            UPDATE event_outbox SET locked_until = :lockedUntil, attempts = attempts + 1
+            WHERE id IN (
+                SELECT e.id FROM event_outbox e
+                WHERE e.available_at <= :now
+                  AND (e.locked_until IS NULL OR e.locked_until < :now)
+                  AND e.attempts < :maxAttempts
+                  AND (e.event_type NOT IN (:orderedTypes) OR NOT EXISTS (
+                      SELECT 1 FROM event_outbox p
+                      WHERE p.aggregate_id = e.aggregate_id
+                        AND p.event_type IN (:orderedTypes)
+                        AND p.id < e.id
+                        AND p.attempts < :maxAttempts))
+                ORDER BY e.id
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED)
+            RETURNING *
+            """, nativeQuery = true)
+    List<OutboxEventEntity> claimBatch(@Param("now") LocalDateTime now,
+                                       @Param("lockedUntil") LocalDateTime lockedUntil,
+                                       @Param("maxAttempts") int maxAttempts,
+                                       @Param("orderedTypes") Collection<String> orderedTypes,
+                                       @Param("limit") int limit);
+
+    // Libera la concesión y programa el siguiente intento
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE event_outbox SET locked_until = NULL, available_at = :availableAt, last_error = :error
+            WHERE id = :id
+            """, nativeQuery = true)
+    void markFailed(@Param("id") Long id,
+                    @Param("availableAt") LocalDateTime availableAt,
+                    @Param("error") String error);
+}
@@ -0,0 +1,9 @@
+package com.proyecto.appclinica.repository;
+
+import com.proyecto.appclinica.model.entity.PatientHistoryStateEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PatientHistoryStateRepository extends JpaRepository<PatientHistoryStateEntity, String> {
+}
@@ -0,0 +1,56 @@
+package com.proyecto.appclinica.repository;
+
+import com.proyecto.appclinica.model.entity.SymptomObservationEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface SymptomObservationRepository extends JpaRepository<SymptomObservationEntity, String> {
+
+    List<SymptomObservationEntity> findByPatientIdOrderByEffectiveAt(String patientId);
+
+    List<SymptomObservationEntity> findByPatientIdAndEffectiveAtBetweenOrderByEffectiveAt(
+            String patientId, LocalDateTime start, LocalDateTime end);
+
+    List<SymptomObservationEntity> findByPatientIdAndLastUpdatedBetweenOrderByLastUpdated(
+            String patientId, LocalDateTime start, LocalDateTime end);
+
+    // Inserta o actualiza la copia; una versión más antigua (p. ej. de la reconciliación) no pisa a una más nueva
+    @Modifying
+    @Query(value = """
+            INSERT INTO symptom_observations (observation_id, patient_id, effective_at, symptom, intensity, notes, last_updated)
+            VALUES (:observationId, :patientId, :effectiveAt, :symptom, :intensity, :notes, :lastUpdated)
+            ON CONFLICT (observation_id) DO UPDATE SET
+                patient_id = EXCLUDED.patient_id,
+                effective_at = EXCLUDED.effective_at,
+                symptom = EXCLUDED.symptom,
+                intensity = EXCLUDED.intensity,
+                notes = EXCLUDED.notes,
+                last_updated = EXCLUDED.last_updated
+            WHERE symptom_observations.last_updated <= EXCLUDED.last_updated
+            """, nativeQuery = true)
+    void upsert(@Param("observationId") String observationId,
+                @Param("patientId") String patientId,
+                @Param("effectiveAt") LocalDateTime effectiveAt,
+                @Param("symptom") String symptom,
+                @Param("intensity") String intensity,
+                @Param("notes") String notes,
+                @Param("lastUpdated") LocalDateTime lastUpdated);
+
+    @Query(value = "SELECT last_updated FROM projection_watermarks WHERE name = :name", nativeQuery = true)
+    Optional<LocalDateTime> findWatermark(@Param("name") String name);
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO projection_watermarks (name, last_updated) VALUES (:name, :lastUpdated)
+            ON CONFLICT (name) DO UPDATE SET last_updated = GREATEST(projection_watermarks.last_updated, EXCLUDED.last_updated)
+            """, nativeQuery = true)
+    void saveWatermark(@Param("name") String name, @Param("lastUpdated") LocalDateTime lastUpdated);
+}
@@ -0,0 +1,80 @@
+package com.proyecto.appclinica.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lectura directa por metadatos de la tabla de pgvector. Para traer los documentos de un paciente no hace falta
+ * búsqueda por similitud (ni calcular el embedding de una consulta): basta un índice sobre metadata->>'patient_id'.
+ */
+@Slf4j
+@Repository
+public class VectorStoreDocumentRepository {
+
+    // Posición del fragmento dentro de su documento; se guarda al trocear el historial
+    public static final String CHUNK_INDEX = "chunk_index";
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final String tableName;
+
+    public VectorStoreDocumentRepository(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                                         @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.tableName = tableName;
+    }
+
+    /**
+     * Crea el índice de expresión sobre patient_id. La tabla la crea PgVectorStore al arrancar
+     * (initialize-schema), por eso no va en una migración de Flyway.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createPatientIndex() {
+        try {
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_" + tableName + "_patient_id ON " + tableName
+                    + " ((metadata->>'patient_id'))");
+        } catch (DataAccessException e) {
+            log.warn("No se pudo crear el índice por patient_id en {}: {}", tableName, e.getMessage());
+        }
+    }
+
+    /**
+     * Todos los documentos del paciente, agrupados por categoría y en el orden de sus fragmentos
+     */
+    public List<Document> findByPatientId(String patientId) {
+        return jdbcTemplate.query("SELECT id, content, metadata::text AS metadata FROM " + tableName
+                        + " WHERE metadata->>'patient_id' = ?"
+                        + " ORDER BY metadata->>'category', (metadata->>'" + CHUNK_INDEX + "')::int NULLS LAST, id",
+                (rs, rowNum) -> toDocument(rs), patientId);
+    }
+
+    private Document toDocument(ResultSet rs) throws SQLException {
+        try {
+            return Document.builder()
+                    .id(rs.getString("id"))
+                    .text(rs.getString("content"))
+                    .metadata(objectMapper.readValue(rs.getString("metadata"), METADATA_TYPE))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Metadatos no válidos en el documento " + rs.getString("id"), e);
+        }
+    }
+}
@@ -11,14 +11,17 @@ import org.springframework.stereotype.Component;
 @Slf4j
 public class MedicationCheckScheduler {
     private final MedicationService medicationService;
+    private final MedicationExpiryTimer medicationExpiryTimer;
 
     /**
-     * Tarea programada que se ejecuta cada 5 minutos para verificar medicamentos pendientes
-     * y enviar notificaciones si están fuera del rango de tolerancia configurado
+     * Tarea programada que recarga el temporizador de vencimientos con los plazos de las próximas dosis.
+     * Antes ejecuta un barrido de recuperación para las dosis que vencieron sin estar en el temporizador
+     * (por ejemplo, mientras la aplicación estaba detenida).
      */
-    @Scheduled(fixedRate = 180000) // 3 minutos = 180000 ms
+    @Scheduled(fixedDelayString = "${medication.expiry.reload-interval-ms:900000}") // 15 minutos por defecto
     public void checkMedications() {
         log.debug("Iniciando verificación programada de medicamentos pendientes");
         medicationService.checkPendingMedications();
+        medicationExpiryTimer.reload();
     }
 }
@@ -0,0 +1,202 @@
+package com.proyecto.appclinica.scheduler;
+
+import com.proyecto.appclinica.event.medication.MedicationDosesChangedEvent;
+import com.proyecto.appclinica.event.medication.MedicationPartitionsChangedEvent;
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationDeadlineView;
+import com.proyecto.appclinica.repository.MedicationRepository;
+import com.proyecto.appclinica.service.MedicationPartitionService;
+import com.proyecto.appclinica.service.MedicationService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Temporizador en memoria que marca cada dosis como NOT_TAKEN en el momento exacto en que vence
+ * su ventana de tolerancia, en lugar de esperar al siguiente sondeo de la tabla.
+ * Solo mantiene los plazos de las próximas horas de los pacientes de las particiones de este nodo;
+ * MedicationCheckScheduler lo recarga periódicamente.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MedicationExpiryTimer {
+
+    // Ventana de tolerancia máxima permitida en MedicationSettings
+    private static final Duration MAX_TOLERANCE = Duration.ofMinutes(60);
+
+    // Canal para avisar a todos los nodos de cambios en las dosis; solo el dueño de la partición los registra
+    private static final String DOSES_CHANGED_CHANNEL = "medication_scheduler:doses_changed";
+
+    private final MedicationRepository medicationRepository;
+    private final MedicationService medicationService;
+    private final MedicationPartitionService medicationPartitionService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // Minutos por delante de ahora cuyas dosis se cargan en el temporizador
+    @Value("${medication.expiry.lookahead-minutes:60}")
+    private int lookaheadMinutes;
+
+    private final DelayQueue<DoseDeadline> queue = new DelayQueue<>();
+
+    // Plazo vigente de cada dosis; las entradas de la cola que ya no coinciden se descartan al vencer
+    private final Map<Long, DoseDeadline> deadlines = new ConcurrentHashMap<>();
+
+    private Thread worker;
+
+    @PostConstruct
+    public void start() {
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> refresh(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(DOSES_CHANGED_CHANNEL));
+
+        worker = new Thread(this::run, "medication-expiry-timer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        worker.interrupt();
+    }
+
+    /**
+     * Carga los plazos de las dosis pendientes desde la tolerancia máxima hacia atrás hasta el final
+     * de la ventana de anticipación. Las ya vencidas se disparan inmediatamente.
+     */
+    public void reload() {
+        Set<Integer> partitions = medicationPartitionService.getOwnedPartitions();
+        if (partitions.isEmpty()) {
+            return;
+        }
+
+        Instant now = Instant.now();
+        List<MedicationDeadlineView> views = medicationRepository.findDeadlinesBetween(
+                Timestamp.from(now.minus(MAX_TOLERANCE)),
+                Timestamp.from(now.plus(Duration.ofMinutes(lookaheadMinutes))),
+                medicationPartitionService.getPartitionCount(), partitions);
+
+        views.forEach(this::register);
+        log.debug("Temporizador de vencimientos recargado: {} dosis cargadas, {} plazos activos",
+                views.size(), deadlines.size());
+    }
+
+    /**
+     * Al cambiar las particiones del nodo se descartan los plazos actuales (también los que esperan en la cola,
+     * para no retener ni disparar los de particiones que ya no son de este nodo) y se cargan los de las nuevas
+     */
+    @EventListener
+    public void onPartitionsChanged(MedicationPartitionsChangedEvent event) {
+        queue.clear();
+        deadlines.clear();
+        reload();
+    }
+
+    /**
+     * Difunde el cambio a todos los nodos tras el commit; el dueño de la partición del paciente recalcula los plazos.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDosesChanged(MedicationDosesChangedEvent event) {
+        String medicationRequestId = event.getMedicationRequestId();
+        if (medicationRequestId == null) {
+            return;
+        }
+
+        try {
+            stringRedisTemplate.convertAndSend(DOSES_CHANGED_CHANNEL, medicationRequestId);
+        } catch (Exception e) {
+            log.warn("No se pudo difundir el cambio de dosis de {}; se recalcula solo en este nodo", medicationRequestId, e);
+            refresh(medicationRequestId);
+        }
+    }
+
+    /**
+     * Recalcula los plazos de un MedicationRequest cuando sus dosis se crean, se reconcilian o cambian de estado
+     */
+    private void refresh(String medicationRequestId) {
+        Set<Integer> partitions = medicationPartitionService.getOwnedPartitions();
+        if (partitions.isEmpty()) {
+            return;
+        }
+
+        Instant now = Instant.now();
+        List<MedicationDeadlineView> views = medicationRepository.findDeadlinesByMedicationRequestId(
+                medicationRequestId,
+                Timestamp.from(now.minus(MAX_TOLERANCE)),
+                Timestamp.from(now.plus(Duration.ofMinutes(lookaheadMinutes))),
+                medicationPartitionService.getPartitionCount(), partitions);
+
+        // Las dosis que ya no están pendientes (o se eliminaron) dejan de tener plazo
+        deadlines.values().removeIf(deadline -> medicationRequestId.equals(deadline.medicationRequestId()));
+        views.forEach(this::register);
+    }
+
+    private void register(MedicationDeadlineView view) {
+        DoseDeadline deadline = new DoseDeadline(
+                view.getId(), view.getMedicationRequestId(), view.getDeadline().toInstant());
+
+        DoseDeadline previous = deadlines.put(deadline.medicationId(), deadline);
+        if (!deadline.equals(previous)) {
+            queue.add(deadline);
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                // Espera al siguiente vencimiento y agrupa los que hayan vencido a la vez
+                List<DoseDeadline> expired = new ArrayList<>();
+                expired.add(queue.take());
+                queue.drainTo(expired);
+
+                List<Long> medicationIds = expired.stream()
+                        .filter(deadline -> deadlines.remove(deadline.medicationId(), deadline))
+                        .map(DoseDeadline::medicationId)
+                        .toList();
+
+                if (!medicationIds.isEmpty()) {
+                    medicationService.expireMedications(medicationIds);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // Las dosis no actualizadas las recoge el barrido periódico de recuperación
+                log.error("Error al marcar dosis vencidas como NOT_TAKEN", e);
+            }
+        }
+    }
+
+    private record DoseDeadline(Long medicationId, String medicationRequestId, Instant deadline) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Duration.between(Instant.now(), deadline));
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return deadline.compareTo(((DoseDeadline) other).deadline);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.proyecto.appclinica.scheduler;
+
+import com.proyecto.appclinica.event.medication.MedicationPartitionsChangedEvent;
+import com.proyecto.appclinica.service.MedicationScheduleService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MedicationHorizonScheduler {
+    private final MedicationScheduleService medicationScheduleService;
+
+    /**
+     * Tarea nocturna que materializa las dosis del nuevo día que entra en el horizonte.
+     * También se ejecuta cuando el nodo recibe particiones nuevas (por ejemplo al arrancar) para recuperar
+     * noches en las que nadie las procesó.
+     */
+    @Async
+    @EventListener(MedicationPartitionsChangedEvent.class)
+    @Scheduled(cron = "${medication.schedule.horizon-cron:0 15 0 * * *}")
+    public void extendHorizon() {
+        log.debug("Iniciando extensión del horizonte de dosis");
+        medicationScheduleService.extendHorizon();
+    }
+}
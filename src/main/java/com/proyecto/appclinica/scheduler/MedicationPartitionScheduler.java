@@ -0,0 +1,32 @@
+package com.proyecto.appclinica.scheduler;
+
+import com.proyecto.appclinica.service.MedicationPartitionService;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MedicationPartitionScheduler {
+    private final MedicationPartitionService medicationPartitionService;
+
+    /**
+     * Latido del nodo: renueva sus leases de particiones y reequilibra cuando un nodo entra o sale
+     */
+    @Scheduled(fixedDelayString = "${medication.partitions.heartbeat-interval-ms:10000}")
+    public void heartbeat() {
+        medicationPartitionService.rebalance();
+    }
+
+    /**
+     * Al detener la aplicación se liberan las particiones para que otro nodo las tome sin esperar al TTL
+     */
+    @PreDestroy
+    public void shutdown() {
+        log.debug("Liberando particiones del planificador de medicamentos");
+        medicationPartitionService.releaseAll();
+    }
+}
@@ -0,0 +1,23 @@
+package com.proyecto.appclinica.scheduler;
+
+import com.proyecto.appclinica.service.MedicationReminderService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MedicationReminderScheduler {
+    private final MedicationReminderService medicationReminderService;
+
+    /**
+     * Tarea programada que envía los recordatorios de dosis pendientes que ya toca enviar
+     */
+    @Scheduled(fixedDelayString = "${medication.reminders.interval-ms:60000}") // 1 minuto por defecto
+    public void sendReminders() {
+        log.debug("Iniciando envío programado de recordatorios de medicamentos");
+        medicationReminderService.sendDueReminders();
+    }
+}
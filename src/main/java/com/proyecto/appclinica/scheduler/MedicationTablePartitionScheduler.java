@@ -0,0 +1,31 @@
+package com.proyecto.appclinica.scheduler;
+
+import com.proyecto.appclinica.repository.MedicationRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MedicationTablePartitionScheduler {
+    private final MedicationRepository medicationRepository;
+
+    @Value("${medication.partitions-maintenance.months-ahead:3}")
+    private int monthsAhead;
+
+    /**
+     * Tarea mensual (y al arrancar) que crea por adelantado las particiones mensuales de la tabla medications,
+     * para que las dosis nuevas nunca caigan en la partición por defecto. La creación es idempotente.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${medication.partitions-maintenance.cron:0 0 3 1 * *}")
+    public void ensurePartitions() {
+        Integer created = medicationRepository.ensureMonthlyPartitions(monthsAhead);
+        log.info("Particiones mensuales de medications verificadas: {} creadas", created);
+    }
+}
@@ -0,0 +1,20 @@
+package com.proyecto.appclinica.scheduler;
+
+import com.proyecto.appclinica.service.OutboxService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class OutboxDispatchScheduler {
+    private final OutboxService outboxService;
+
+    /**
+     * Despacha los eventos del outbox; varios nodos pueden hacerlo a la vez sin repartirse los mismos eventos
+     */
+    @Scheduled(fixedDelayString = "${outbox.poll-interval-ms:1000}") // 1 segundo por defecto
+    public void dispatchOutbox() {
+        outboxService.dispatchPending();
+    }
+}
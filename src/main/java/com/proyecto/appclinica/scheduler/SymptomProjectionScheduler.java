@@ -0,0 +1,28 @@
+package com.proyecto.appclinica.scheduler;
+
+import com.proyecto.appclinica.service.SymptomProjectionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SymptomProjectionScheduler {
+    private final SymptomProjectionService symptomProjectionService;
+
+    /**
+     * Tarea programada que trae a la proyección local los síntomas modificados en FHIR por otros clientes.
+     * La primera ejecución (poco después de arrancar) carga la proyección completa si está vacía.
+     */
+    @Scheduled(initialDelayString = "${symptoms.projection.initial-delay-ms:10000}",
+            fixedDelayString = "${symptoms.projection.reconcile-interval-ms:300000}") // 5 minutos por defecto
+    public void reconcileSymptomProjection() {
+        try {
+            symptomProjectionService.reconcile();
+        } catch (Exception e) {
+            log.error("Error al reconciliar la proyección de síntomas con FHIR", e);
+        }
+    }
+}
@@ -61,14 +61,20 @@ public class CodeVerificationService {
             log.warn("El paciente {} no tiene número de teléfono ni email registrado", identifier);
             throw new ResourceNotFoundException("Número de teléfono y Email");
         }
-        // Descomentar cuando se tenga credenciales de Twilio para SMS
-//        if (hasPhone) {
-//            sendVerificationSms(phoneNumber, fullName, code);
-//            log.info("Enviando código por SMS al paciente {}", identifier);
-//        }
-        if (hasEmail) {
-            sendVerificationEmail(email, fullName, code);
-            log.info("Enviando código por email al paciente {}", identifier);
+        try {
+            // Descomentar cuando se tenga credenciales de Twilio para SMS
+//            if (hasPhone) {
+//                sendVerificationSms(phoneNumber, fullName, code);
+//                log.info("Enviando código por SMS al paciente {}", identifier);
+//            }
+            if (hasEmail) {
+                sendVerificationEmail(email, fullName, code);
+                log.info("Enviando código por email al paciente {}", identifier);
+            }
+        } catch (RuntimeException e) {
+            // El contacto pudo cambiar en FHIR: el siguiente intento no debe reutilizar el paciente en caché
+            fhirPatientRepository.evictPatient(identifier);
+            throw e;
         }
 
         log.info("El codigo es: {}", code);
@@ -115,16 +121,21 @@ public class CodeVerificationService {
         // Restablecer contador de intentos
         redisTemplate.delete(attemptsKey(identifier));
 
+        // Si pide otro código es que no recibió el anterior: se vuelven a leer de FHIR su teléfono y email
+        fhirPatientRepository.evictPatient(identifier);
+
         // Generar y enviar un nuevo código
         return generateAndSendCode(identifier);
     }
 
     private Patient findPatientOrThrow(String id) {
-        if (!fhirPatientRepository.patientExistsByIdentifier(id)) {
+        // Una sola búsqueda: si no hay paciente, el repositorio devuelve null
+        Patient patient = fhirPatientRepository.getPatientByIdentifier(id);
+        if (patient == null) {
             log.warn("Usuario inexistente: {}", id);
             throw new ResourceNotFoundException("Usuario", "DNI", id);
         }
-        return fhirPatientRepository.getPatientByIdentifier(id);
+        return patient;
     }
 
     // Verificar si está en período de enfriamiento
@@ -0,0 +1,17 @@
+package com.proyecto.appclinica.service;
+
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationAdherenceDto;
+import com.proyecto.appclinica.model.entity.EMedicationStatementStatus;
+import com.proyecto.appclinica.model.entity.MedicationEntity;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+public interface MedicationAdherenceService {
+
+    void applyStatusChange(MedicationEntity medication, EMedicationStatementStatus oldStatus, EMedicationStatementStatus newStatus);
+
+    void recompute(Collection<String> medicationRequestIds, LocalDate startDate, LocalDate endDate);
+
+    MedicationAdherenceDto getAdherence(String patientId, LocalDate startDate, LocalDate endDate);
+}
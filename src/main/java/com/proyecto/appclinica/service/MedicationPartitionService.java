@@ -0,0 +1,14 @@
+package com.proyecto.appclinica.service;
+
+import java.util.Set;
+
+public interface MedicationPartitionService {
+
+    void rebalance();
+
+    void releaseAll();
+
+    int getPartitionCount();
+
+    Set<Integer> getOwnedPartitions();
+}
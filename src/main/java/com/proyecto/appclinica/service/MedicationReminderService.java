@@ -0,0 +1,13 @@
+package com.proyecto.appclinica.service;
+
+public interface MedicationReminderService {
+
+    void sendDueReminders();
+
+    void clearReminders(Long medicationId);
+
+    /**
+     * Devuelve el intento reservado cuando su envío falla, para que la siguiente ejecución lo reintente
+     */
+    void releaseReminderAttempt(Long medicationId, int attempt);
+}
@@ -0,0 +1,25 @@
+package com.proyecto.appclinica.service;
+
+import com.proyecto.appclinica.model.entity.MedicationEntity;
+import org.hl7.fhir.r4.model.MedicationRequest;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface MedicationScheduleService {
+
+    void materializeSchedule(MedicationRequest medicationRequest);
+
+    void reconcileSchedule(MedicationRequest medicationRequest);
+
+    void extendHorizon();
+
+    List<MedicationEntity> getVirtualMedications(String patientId, LocalDate startDate, LocalDate endDate);
+
+    /**
+     * Materializa la pauta hasta el día de la dosis calculada (ID de {@link com.proyecto.appclinica.util.VirtualDoseId})
+     * y devuelve la dosis ya guardada, para poder actualizarla como cualquier otra. Las dosis posteriores al
+     * horizonte de materialización se rechazan.
+     */
+    MedicationEntity materializeVirtualDose(long virtualDoseId);
+}
@@ -1,10 +1,14 @@
 package com.proyecto.appclinica.service;
 
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationPageDto;
 import com.proyecto.appclinica.model.dto.treatment.medication.MedicationResponseDto;
 import com.proyecto.appclinica.model.dto.treatment.medication.MedicationStatusUpdateDto;
+import com.proyecto.appclinica.model.entity.EMedicationStatementStatus;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface MedicationService {
 
@@ -16,7 +20,11 @@ public interface MedicationService {
 
     void checkPendingMedications();
 
-    List<MedicationResponseDto> getMedicationsInDateRange(String patientId, LocalDate startDate, LocalDate endDate);
+    List<Long> expireMedications(Collection<Long> medicationIds);
 
-    List<MedicationResponseDto> getMedicationsByDateRangeAndStatus(String patientId, LocalDate startDate, LocalDate endDate, String status);
+    MedicationPageDto getMedicationsPage(String patientId, LocalDate startDate, LocalDate endDate,
+                                         EMedicationStatementStatus status, String cursor, int size);
+
+    void streamMedications(String patientId, LocalDate startDate, LocalDate endDate,
+                           EMedicationStatementStatus status, Consumer<MedicationResponseDto> consumer);
 }
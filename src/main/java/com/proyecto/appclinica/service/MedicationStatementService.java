@@ -1,8 +1,16 @@
 package com.proyecto.appclinica.service;
 
-import com.proyecto.appclinica.model.entity.MedicationEntity;
+import com.proyecto.appclinica.event.medication.MedicationCompletedEvent;
+
+import java.util.List;
+import java.util.Set;
 
 public interface MedicationStatementService {
 
-    void createCompletedMedicationStatement(MedicationEntity medication, String patientId);
+    /**
+     * Crea en FHIR, agrupados en Bundles, los MedicationStatement de las tomas (idempotente por el ID de la dosis)
+     *
+     * @return IDs de las dosis cuyo MedicationStatement aceptó el servidor (creado o ya existente)
+     */
+    Set<Long> createCompletedMedicationStatements(List<MedicationCompletedEvent> events);
 }
@@ -0,0 +1,15 @@
+package com.proyecto.appclinica.service;
+
+public interface OutboxService {
+
+    /**
+     * Guarda el evento en el outbox dentro de la transacción actual (o en una nueva si no hay ninguna).
+     * Sus listeners se ejecutan cuando el despachador lo reclama, después del commit.
+     */
+    void publish(Object event);
+
+    /**
+     * Reclama los eventos disponibles y los despacha en los ejecutores de cada tipo de evento
+     */
+    void dispatchPending();
+}
@@ -17,7 +17,8 @@ public interface PatientHistoryService {
     PatientHistoryResponse createPatientHistory(String patientId);
 
     /**
-     * Obtiene el historial del paciente en formato JSON.
+     * Crea el resumen del historial del paciente o, si ya existe, le incorpora solo los recursos
+     * modificados desde la última vez, y reemplaza sus fragmentos en el VectorStore.
      * @param patientId ID del paciente
      * @param fromDate Fecha de inicio del historial
      * @param toDate Fecha de fin del historial
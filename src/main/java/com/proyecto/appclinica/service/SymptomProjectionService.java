@@ -0,0 +1,37 @@
+package com.proyecto.appclinica.service;
+
+import com.proyecto.appclinica.model.dto.symptom.SymptomRecordDto;
+import org.hl7.fhir.r4.model.Observation;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Proyección local de las Observation de síntomas. Las lecturas del diario se sirven desde Postgres.
+ */
+public interface SymptomProjectionService {
+
+    /**
+     * Guarda (o actualiza) la copia local de una observación escrita en FHIR
+     */
+    void project(Observation observation);
+
+    void remove(String observationId);
+
+    /**
+     * Trae de FHIR las observaciones modificadas desde la última reconciliación (escrituras de otros clientes)
+     */
+    void reconcile();
+
+    List<SymptomRecordDto> findByPatient(String patientId);
+
+    /**
+     * Síntomas que ocurrieron entre las fechas indicadas (ambas incluidas)
+     */
+    List<SymptomRecordDto> findByPatientAndDateRange(String patientId, LocalDate startDate, LocalDate endDate);
+
+    /**
+     * Síntomas registrados (última modificación en FHIR) entre las fechas indicadas (ambas incluidas)
+     */
+    List<SymptomRecordDto> findByPatientAndRegistrationDateRange(String patientId, LocalDate startDate, LocalDate endDate);
+}
@@ -14,6 +14,7 @@ import com.proyecto.appclinica.repository.FhirPatientRepository;
 import com.proyecto.appclinica.repository.PatientRepository;
 import com.proyecto.appclinica.service.AuthService;
 import com.proyecto.appclinica.service.CodeVerificationService;
+import com.proyecto.appclinica.service.OutboxService;
 import com.proyecto.appclinica.service.PatientService;
 import lombok.RequiredArgsConstructor;
 import org.hl7.fhir.r4.model.Patient;
@@ -22,6 +23,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -34,13 +36,15 @@ public class AuthServiceImpl implements  AuthService {
     private final PatientRepository patientRepository;
     private final PatientService patientService;
     private final ApplicationEventPublisher eventPublisher;
+    private final OutboxService outboxService;
 
     @Override
     public VerificationStatusResponseDto checkUserExists(String identifier) {
-        // Primero verificamos si el usuario existe en el sistema FHIR
-        boolean existsInFhir = fhirPatientRepository.patientExistsByIdentifier(identifier);
+        // Primero verificamos si el usuario existe en el sistema FHIR. Se obtiene el paciente completo
+        // (no solo el conteo) para dejarlo en caché: el envío y la verificación del código lo reutilizan
+        Patient fhirPatient = fhirPatientRepository.getPatientByIdentifier(identifier);
 
-        if (!existsInFhir) {
+        if (fhirPatient == null) {
             throw new ResourceNotFoundException("Usuario", "DNI", identifier);
         }
 
@@ -81,6 +85,7 @@ public class AuthServiceImpl implements  AuthService {
     }
 
     @Override
+    @Transactional // El paciente y los eventos que genera se confirman en la misma transacción
     public VerifyCodeResponse verifyCode(String identifier, String code) {
         if (!userExists(identifier)) {
             throw new ResourceNotFoundException("Usuario", "DNI", identifier);
@@ -95,7 +100,7 @@ public class AuthServiceImpl implements  AuthService {
         // Si el código es correcto, obtenemos el paciente de FHIR y publicamos el evento
         Patient patient = fhirPatientRepository.getPatientByIdentifier(identifier);
         eventPublisher.publishEvent(new PatientCreatedEvent(patient));
-        eventPublisher.publishEvent(new PatientHistoryEvent(patient.getIdElement().getIdPart()));
+        outboxService.publish(new PatientHistoryEvent(patient.getIdElement().getIdPart()));
 
         return new VerifyCodeResponse("El código es correcto");
     }
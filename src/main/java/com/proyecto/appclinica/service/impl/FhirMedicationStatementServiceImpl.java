@@ -1,20 +1,26 @@
 package com.proyecto.appclinica.service.impl;
 
-import com.proyecto.appclinica.exception.FhirMedicationStatementException;
+import com.proyecto.appclinica.constant.FhirConstants;
+import com.proyecto.appclinica.event.medication.MedicationCompletedEvent;
 import com.proyecto.appclinica.model.entity.MedicationEntity;
 import com.proyecto.appclinica.repository.FhirMedicationStatementRepository;
 import com.proyecto.appclinica.service.MedicationStatementService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.CodeableConcept;
 import org.hl7.fhir.r4.model.DateTimeType;
 import org.hl7.fhir.r4.model.MedicationStatement;
 import org.hl7.fhir.r4.model.Reference;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
@@ -23,43 +29,106 @@ public class FhirMedicationStatementServiceImpl implements MedicationStatementSe
 
     private final FhirMedicationStatementRepository fhirMedicationStatementRepository;
 
-    @Override
-    public void createCompletedMedicationStatement(MedicationEntity medication, String patientId) {
-        try {
-            MedicationStatement medicationStatement = new MedicationStatement();
+    // Máximo de MedicationStatement por Bundle transaction
+    @Value("${medication.statements.batch-size:50}")
+    private int batchSize;
 
-            // Establecer el estado como "completed"
-            medicationStatement.setStatus(MedicationStatement.MedicationStatementStatus.COMPLETED);
+    /**
+     * Envía las tomas en Bundles transaction. Si el servidor rechaza un Bundle (una sola entrada inválida lo
+     * invalida completo), cada MedicationStatement se reintenta por separado; la creación condicional por
+     * identificador evita duplicados si parte del lote ya se había guardado. Las tomas que no se pudieron guardar
+     * no se descartan: quedan fuera del resultado y el outbox las reintenta.
+     */
+    @Override
+    public Set<Long> createCompletedMedicationStatements(List<MedicationCompletedEvent> events) {
+        List<MedicationStatement> statements = events.stream()
+                .map(event -> buildCompletedMedicationStatement(event.getMedication(), event.getPatientId()))
+                .toList();
 
-            Reference patientReference = new Reference("Patient/" + patientId);
-            medicationStatement.setSubject(patientReference);
+        Set<Long> accepted = new HashSet<>();
+        for (int from = 0; from < statements.size(); from += batchSize) {
+            sendBatch(statements.subList(from, Math.min(from + batchSize, statements.size())), accepted);
+        }
+        return accepted;
+    }
 
-            // Establecer el concepto del medicamento
-            CodeableConcept medicationConcept = new CodeableConcept();
-            medicationConcept.setText(medication.getNameMedicine() + " " +
-                    medication.getDoseValue() + " " +
-                    medication.getDoseUnit());
-            medicationStatement.setMedication(medicationConcept);
+    private void sendBatch(List<MedicationStatement> batch, Set<Long> accepted) {
+        List<Bundle.BundleEntryComponent> responses;
+        try {
+            responses = fhirMedicationStatementRepository.saveMedicationStatements(batch);
+        } catch (Exception e) {
+            log.warn("Error al enviar el Bundle de {} MedicationStatement; se reintentan individualmente: {}",
+                    batch.size(), e.getMessage());
+            batch.forEach(statement -> sendIndividually(statement, accepted));
+            return;
+        }
 
-            // Establecer la fecha y hora efectiva (cuándo se tomó el medicamento)
-            ZonedDateTime effectiveDateTime = ZonedDateTime.ofInstant(
-                    medication.getTimeOfTaking().toInstant(),
-                    ZoneId.systemDefault());
-            DateTimeType effectiveDate = new DateTimeType(Date.from(effectiveDateTime.toInstant()));
-            medicationStatement.setEffective(effectiveDate);
+        int created = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            String status = i < responses.size() ? responses.get(i).getResponse().getStatus() : null;
 
-            // Establecer la fecha de afirmación (cuándo se registró la toma)
-            ZonedDateTime now = ZonedDateTime.now();
-            medicationStatement.setDateAsserted(Date.from(now.toInstant()));
+            if (status != null && status.startsWith("201")) {
+                created++;
+                accepted.add(doseId(batch.get(i)));
+            } else if (status != null && status.startsWith("200")) {
+                // 200 indica que ya existía (creación condicional)
+                accepted.add(doseId(batch.get(i)));
+            } else {
+                log.warn("Respuesta inesperada ({}) para el MedicationStatement de la dosis {}",
+                        status, doseId(batch.get(i)));
+                sendIndividually(batch.get(i), accepted);
+            }
+        }
 
-            // Establecer que fue tomado
-            medicationStatement.setStatus(MedicationStatement.MedicationStatementStatus.COMPLETED);
+        log.info("Bundle de MedicationStatement enviado: {} entradas, {} creadas", batch.size(), created);
+    }
 
-            // Delegar el guardado al repositorio
+    private void sendIndividually(MedicationStatement medicationStatement, Set<Long> accepted) {
+        try {
             fhirMedicationStatementRepository.saveMedicationStatement(medicationStatement);
-
+            accepted.add(doseId(medicationStatement));
         } catch (Exception e) {
-            throw new FhirMedicationStatementException("Error al crear el MedicationStatement en FHIR", e);
+            log.warn("No se pudo crear el MedicationStatement de la dosis {}; se reintentará: {}",
+                    doseId(medicationStatement), e.getMessage());
         }
     }
+
+    private MedicationStatement buildCompletedMedicationStatement(MedicationEntity medication, String patientId) {
+        MedicationStatement medicationStatement = new MedicationStatement();
+
+        // Identificador de la dosis local: hace idempotente la creación en FHIR
+        medicationStatement.addIdentifier()
+                .setSystem(FhirConstants.MEDICATION_DOSE_IDENTIFIER_SYSTEM)
+                .setValue(String.valueOf(medication.getId()));
+
+        // Establecer el estado como "completed"
+        medicationStatement.setStatus(MedicationStatement.MedicationStatementStatus.COMPLETED);
+
+        Reference patientReference = new Reference("Patient/" + patientId);
+        medicationStatement.setSubject(patientReference);
+
+        // Establecer el concepto del medicamento
+        CodeableConcept medicationConcept = new CodeableConcept();
+        medicationConcept.setText(medication.getNameMedicine() + " " +
+                medication.getDoseValue() + " " +
+                medication.getDoseUnit());
+        medicationStatement.setMedication(medicationConcept);
+
+        // Establecer la fecha y hora efectiva (cuándo se tomó el medicamento)
+        ZonedDateTime effectiveDateTime = ZonedDateTime.ofInstant(
+                medication.getTimeOfTaking().toInstant(),
+                ZoneId.systemDefault());
+        DateTimeType effectiveDate = new DateTimeType(Date.from(effectiveDateTime.toInstant()));
+        medicationStatement.setEffective(effectiveDate);
+
+        // Establecer la fecha de afirmación (cuándo se registró la toma)
+        ZonedDateTime now = ZonedDateTime.now();
+        medicationStatement.setDateAsserted(Date.from(now.toInstant()));
+
+        return medicationStatement;
+    }
+
+    private Long doseId(MedicationStatement medicationStatement) {
+        return Long.valueOf(medicationStatement.getIdentifierFirstRep().getValue());
+    }
 }
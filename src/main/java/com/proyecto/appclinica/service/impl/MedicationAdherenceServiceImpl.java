@@ -0,0 +1,94 @@
+package com.proyecto.appclinica.service.impl;
+
+import com.proyecto.appclinica.exception.InvalidRequestException;
+import com.proyecto.appclinica.model.dto.treatment.medication.DailyAdherenceDto;
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationAdherenceDto;
+import com.proyecto.appclinica.model.entity.EMedicationStatementStatus;
+import com.proyecto.appclinica.model.entity.MedicationEntity;
+import com.proyecto.appclinica.repository.MedicationAdherenceRepository;
+import com.proyecto.appclinica.service.MedicationAdherenceService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Mantiene la tabla medication_adherence_daily. Los cambios de estado de una dosis se aplican como
+ * deltas; la creación o reconciliación de dosis recalcula solo los días y tratamientos afectados.
+ * El barrido NOT_TAKEN actualiza el resumen en la misma sentencia (ver MedicationRepository).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MedicationAdherenceServiceImpl implements MedicationAdherenceService {
+
+    private final MedicationAdherenceRepository medicationAdherenceRepository;
+
+    @Override
+    @Transactional
+    public void applyStatusChange(MedicationEntity medication, EMedicationStatementStatus oldStatus,
+                                  EMedicationStatementStatus newStatus) {
+        if (oldStatus == newStatus) {
+            return;
+        }
+
+        int completed = count(newStatus, EMedicationStatementStatus.COMPLETED) - count(oldStatus, EMedicationStatementStatus.COMPLETED);
+        int notTaken = count(newStatus, EMedicationStatementStatus.NOT_TAKEN) - count(oldStatus, EMedicationStatementStatus.NOT_TAKEN);
+        int intended = count(newStatus, EMedicationStatementStatus.INTENDED) - count(oldStatus, EMedicationStatementStatus.INTENDED);
+
+        // Estados que no se resumen (ACTIVE, STOPPED...) no generan cambios
+        if (completed == 0 && notTaken == 0 && intended == 0) {
+            return;
+        }
+
+        medicationAdherenceRepository.applyDelta(medication.getPatientId(), medication.getDate(),
+                medication.getMedicationRequestId(), completed, notTaken, intended);
+    }
+
+    @Override
+    @Transactional
+    public void recompute(Collection<String> medicationRequestIds, LocalDate startDate, LocalDate endDate) {
+        if (medicationRequestIds.isEmpty() || endDate.isBefore(startDate)) {
+            return;
+        }
+
+        Timestamp start = Timestamp.valueOf(startDate.atStartOfDay());
+        Timestamp end = Timestamp.valueOf(endDate.plusDays(1).atStartOfDay());
+
+        // Primero el bloqueo: el recálculo (sentencia aparte) ya ve todos los cambios de estado confirmados
+        medicationAdherenceRepository.lockDoses(medicationRequestIds, start, end);
+        medicationAdherenceRepository.recompute(medicationRequestIds, start, end);
+        medicationAdherenceRepository.deleteWithoutDoses(medicationRequestIds, startDate, endDate);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public MedicationAdherenceDto getAdherence(String patientId, LocalDate startDate, LocalDate endDate) {
+        if (endDate.isBefore(startDate)) {
+            throw new InvalidRequestException("La fecha de fin no puede ser anterior a la fecha de inicio");
+        }
+
+        List<DailyAdherenceDto> days = medicationAdherenceRepository.findDailyAdherence(patientId, startDate, endDate);
+
+        long completed = days.stream().mapToLong(DailyAdherenceDto::completed).sum();
+        long notTaken = days.stream().mapToLong(DailyAdherenceDto::notTaken).sum();
+        long intended = days.stream().mapToLong(DailyAdherenceDto::intended).sum();
+
+        // Solo cuentan las dosis ya resueltas; las pendientes aún pueden tomarse
+        Double adherenceRate = completed + notTaken > 0
+                ? (double) completed / (completed + notTaken)
+                : null;
+
+        return new MedicationAdherenceDto(patientId, startDate, endDate,
+                completed, notTaken, intended, adherenceRate, days);
+    }
+
+    private int count(EMedicationStatementStatus status, EMedicationStatementStatus tracked) {
+        return status == tracked ? 1 : 0;
+    }
+}
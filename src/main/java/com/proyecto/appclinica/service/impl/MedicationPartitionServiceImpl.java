@@ -0,0 +1,158 @@
+package com.proyecto.appclinica.service.impl;
+
+import com.proyecto.appclinica.event.medication.MedicationPartitionsChangedEvent;
+import com.proyecto.appclinica.service.MedicationPartitionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Reparte los pacientes entre las réplicas para que cada dosis la procese un único nodo.
+ * Los pacientes se agrupan en un número fijo de particiones (hash del patient_id) y cada nodo
+ * mantiene en Redis un lease con TTL sobre su parte: ceil(particiones / nodos activos).
+ * Si un nodo deja de renovar, sus leases caducan y los demás los toman en el siguiente latido.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MedicationPartitionServiceImpl implements MedicationPartitionService {
+
+    private static final String REDIS_NODES_KEY = "medication_scheduler:nodes";
+    private static final String REDIS_LEASE_PREFIX = "medication_scheduler:partition:";
+
+    // Renueva el lease solo si sigue perteneciendo a este nodo
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end", Long.class);
+
+    // Libera el lease solo si sigue perteneciendo a este nodo
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${medication.partitions.count:16}")
+    private int partitionCount;
+
+    // Duración del lease; debe ser varias veces mayor que el intervalo de latido
+    @Value("${medication.partitions.lease-ttl-ms:30000}")
+    private long leaseTtlMs;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private volatile Set<Integer> ownedPartitions = Collections.emptySet();
+
+    private Instant leaseValidUntil = Instant.EPOCH;
+
+    @Override
+    public synchronized void rebalance() {
+        Instant validUntil = Instant.now().plusMillis(leaseTtlMs);
+        Set<Integer> owned;
+
+        try {
+            owned = claimPartitions();
+            leaseValidUntil = validUntil;
+        } catch (Exception e) {
+            log.error("Error al coordinar las particiones del planificador de medicamentos en Redis", e);
+            // Conservamos las particiones mientras el lease siga vigente; después otro nodo puede tomarlas
+            owned = Instant.now().isBefore(leaseValidUntil) ? ownedPartitions : Collections.emptySet();
+        }
+
+        updateOwnedPartitions(owned);
+    }
+
+    @Override
+    public synchronized void releaseAll() {
+        try {
+            ownedPartitions.forEach(this::release);
+            stringRedisTemplate.opsForZSet().remove(REDIS_NODES_KEY, nodeId);
+            log.info("Nodo {} liberó las particiones {}", nodeId, ownedPartitions);
+        } catch (Exception e) {
+            log.warn("No se pudieron liberar las particiones del nodo {}; caducarán por TTL", nodeId, e);
+        }
+        ownedPartitions = Collections.emptySet();
+    }
+
+    @Override
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    @Override
+    public Set<Integer> getOwnedPartitions() {
+        return ownedPartitions;
+    }
+
+    private Set<Integer> claimPartitions() {
+        long now = System.currentTimeMillis();
+
+        // Latido: los nodos activos son los que se han registrado dentro del último TTL
+        ZSetOperations<String, String> nodes = stringRedisTemplate.opsForZSet();
+        nodes.add(REDIS_NODES_KEY, nodeId, now);
+        nodes.removeRangeByScore(REDIS_NODES_KEY, 0, now - leaseTtlMs);
+        Long liveNodes = nodes.zCard(REDIS_NODES_KEY);
+        int target = (int) Math.ceil((double) partitionCount / Math.max(1, liveNodes == null ? 1 : liveNodes));
+
+        // Renovamos las particiones propias y liberamos las que sobran para que las tome un nodo nuevo
+        Set<Integer> owned = new TreeSet<>();
+        for (Integer partition : ownedPartitions) {
+            if (owned.size() >= target) {
+                release(partition);
+            } else if (renew(partition)) {
+                owned.add(partition);
+            }
+        }
+
+        // Tomamos particiones libres empezando en un desplazamiento propio del nodo para repartir la contención
+        int offset = Math.floorMod(nodeId.hashCode(), partitionCount);
+        for (int i = 0; i < partitionCount && owned.size() < target; i++) {
+            int partition = (offset + i) % partitionCount;
+            if (!owned.contains(partition) && Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                    .setIfAbsent(leaseKey(partition), nodeId, Duration.ofMillis(leaseTtlMs)))) {
+                owned.add(partition);
+            }
+        }
+
+        return owned;
+    }
+
+    private boolean renew(int partition) {
+        Long result = stringRedisTemplate.execute(RENEW_SCRIPT, List.of(leaseKey(partition)),
+                nodeId, String.valueOf(leaseTtlMs));
+        return result != null && result == 1L;
+    }
+
+    private void release(int partition) {
+        stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(leaseKey(partition)), nodeId);
+    }
+
+    private void updateOwnedPartitions(Set<Integer> owned) {
+        if (owned.equals(ownedPartitions)) {
+            return;
+        }
+
+        log.info("Nodo {}: particiones del planificador de medicamentos {} -> {}", nodeId, ownedPartitions, owned);
+        ownedPartitions = Collections.unmodifiableSet(owned);
+        eventPublisher.publishEvent(new MedicationPartitionsChangedEvent(ownedPartitions));
+    }
+
+    private String leaseKey(int partition) {
+        return REDIS_LEASE_PREFIX + partition;
+    }
+}
@@ -0,0 +1,166 @@
+package com.proyecto.appclinica.service.impl;
+
+import com.proyecto.appclinica.event.medication.MedicationReminderEvent;
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationReminderView;
+import com.proyecto.appclinica.model.entity.MedicationEntity;
+import com.proyecto.appclinica.repository.MedicationRepository;
+import com.proyecto.appclinica.service.MedicationPartitionService;
+import com.proyecto.appclinica.service.MedicationReminderService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Envía recordatorios de las dosis pendientes según MedicationSettings: un intento cada
+ * reminderFrequencyMinutes desde la hora de toma, hasta maxReminderAttempts.
+ * El número de intentos enviados por dosis se guarda en Redis y se reserva con un script atómico,
+ * de modo que dos ejecuciones concurrentes (o dos nodos) nunca envían el mismo intento.
+ * Si el envío falla, el intento se libera y se vuelve a reservar en la siguiente ejecución.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MedicationReminderServiceImpl implements MedicationReminderService {
+
+    private static final String REDIS_ATTEMPTS_PREFIX = "medication_reminder_attempts:";
+    private static final int REMINDER_BATCH_SIZE = 200;
+
+    // Ventana de tolerancia máxima: pasado ese tiempo la dosis se marca NOT_TAKEN y no se recuerda más
+    private static final Duration MAX_TOLERANCE = Duration.ofMinutes(60);
+
+    // Los contadores solo se necesitan mientras la dosis puede recibir recordatorios
+    private static final Duration ATTEMPTS_TTL = Duration.ofHours(2);
+
+    // Para cada dosis (KEYS[i]) reserva el intento ARGV[i] si aún no se ha enviado; devuelve el intento o 0
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> RESERVE_ATTEMPTS_SCRIPT = new DefaultRedisScript<>("""
+            local ttl = ARGV[#KEYS + 1]
+            local result = {}
+            for i, key in ipairs(KEYS) do
+                local sent = tonumber(redis.call('get', key) or '0')
+                local due = tonumber(ARGV[i])
+                if sent < due then
+                    redis.call('set', key, due, 'PX', ttl)
+                    result[i] = due
+                else
+                    result[i] = 0
+                end
+            end
+            return result
+            """, List.class);
+
+    // Deshace la reserva del intento ARGV[1] solo si sigue siendo el último reservado (DECR conserva el TTL)
+    private static final RedisScript<Long> RELEASE_ATTEMPT_SCRIPT = new DefaultRedisScript<>("""
+            if tonumber(redis.call('get', KEYS[1]) or '0') ~= tonumber(ARGV[1]) then
+                return 0
+            end
+            if tonumber(ARGV[1]) <= 1 then
+                redis.call('del', KEYS[1])
+            else
+                redis.call('decr', KEYS[1])
+            end
+            return 1
+            """, Long.class);
+
+    private final MedicationRepository medicationRepository;
+    private final MedicationPartitionService medicationPartitionService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Override
+    public void sendDueReminders() {
+        Set<Integer> partitions = medicationPartitionService.getOwnedPartitions();
+        if (partitions.isEmpty()) {
+            return;
+        }
+
+        Instant now = Instant.now();
+        List<MedicationReminderView> candidates = medicationRepository.findReminderCandidates(
+                Timestamp.from(now.minus(MAX_TOLERANCE)), Timestamp.from(now),
+                medicationPartitionService.getPartitionCount(), partitions);
+
+        int sent = 0;
+        for (int i = 0; i < candidates.size(); i += REMINDER_BATCH_SIZE) {
+            List<MedicationReminderView> batch = candidates.subList(i, Math.min(i + REMINDER_BATCH_SIZE, candidates.size()));
+            sent += sendBatch(batch, now);
+        }
+
+        if (sent > 0) {
+            log.info("Se enviaron {} recordatorios de medicamentos ({} dosis pendientes revisadas)", sent, candidates.size());
+        }
+    }
+
+    @Override
+    public void clearReminders(Long medicationId) {
+        stringRedisTemplate.delete(attemptsKey(medicationId));
+    }
+
+    @Override
+    public void releaseReminderAttempt(Long medicationId, int attempt) {
+        Long released = stringRedisTemplate.execute(RELEASE_ATTEMPT_SCRIPT,
+                List.of(attemptsKey(medicationId)), String.valueOf(attempt));
+        if (released == null || released == 0) {
+            log.debug("El intento {} del medicamento {} ya no estaba reservado", attempt, medicationId);
+        }
+    }
+
+    private int sendBatch(List<MedicationReminderView> batch, Instant now) {
+        List<String> keys = new ArrayList<>(batch.size());
+        List<String> args = new ArrayList<>(batch.size() + 1);
+
+        for (MedicationReminderView view : batch) {
+            // Intento que corresponde ahora: 1 a la hora de toma, 2 tras una frecuencia, etc.
+            long elapsedMinutes = Duration.between(view.getTimeOfTaking().toInstant(), now).toMinutes();
+            long dueAttempt = Math.min(view.getMaxReminderAttempts(),
+                    elapsedMinutes / view.getReminderFrequencyMinutes() + 1);
+
+            keys.add(attemptsKey(view.getId()));
+            args.add(String.valueOf(dueAttempt));
+        }
+        args.add(String.valueOf(ATTEMPTS_TTL.toMillis()));
+
+        List<?> reserved = stringRedisTemplate.execute(RESERVE_ATTEMPTS_SCRIPT, keys, args.toArray());
+        if (reserved == null) {
+            return 0;
+        }
+
+        Map<Long, Integer> attemptsToSend = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            int attempt = ((Number) reserved.get(i)).intValue();
+            if (attempt > 0) {
+                attemptsToSend.put(batch.get(i).getId(), attempt);
+            }
+        }
+
+        if (attemptsToSend.isEmpty()) {
+            return 0;
+        }
+
+        Map<Long, MedicationEntity> medications = medicationRepository.findAllById(attemptsToSend.keySet()).stream()
+                .collect(Collectors.toMap(MedicationEntity::getId, Function.identity()));
+
+        attemptsToSend.forEach((medicationId, attempt) -> {
+            MedicationEntity medication = medications.get(medicationId);
+            if (medication != null) {
+                eventPublisher.publishEvent(new MedicationReminderEvent(medication, medication.getPatientId(), attempt));
+            }
+        });
+
+        return attemptsToSend.size();
+    }
+
+    private String attemptsKey(Long medicationId) {
+        return REDIS_ATTEMPTS_PREFIX + medicationId;
+    }
+}
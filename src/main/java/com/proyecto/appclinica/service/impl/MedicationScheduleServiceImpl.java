@@ -0,0 +1,286 @@
+package com.proyecto.appclinica.service.impl;
+
+import com.proyecto.appclinica.event.medication.MedicationDosesChangedEvent;
+import com.proyecto.appclinica.exception.InvalidRequestException;
+import com.proyecto.appclinica.exception.ResourceNotFoundException;
+import com.proyecto.appclinica.model.entity.EMedicationStatementStatus;
+import com.proyecto.appclinica.model.entity.MedicationEntity;
+import com.proyecto.appclinica.model.entity.MedicationScheduleEntity;
+import com.proyecto.appclinica.repository.MedicationRepository;
+import com.proyecto.appclinica.repository.MedicationScheduleRepository;
+import com.proyecto.appclinica.service.MedicationAdherenceService;
+import com.proyecto.appclinica.service.MedicationPartitionService;
+import com.proyecto.appclinica.service.MedicationScheduleService;
+import com.proyecto.appclinica.util.MedicationScheduleCalculator;
+import com.proyecto.appclinica.util.VirtualDoseId;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.r4.model.MedicationRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MedicationScheduleServiceImpl implements MedicationScheduleService {
+
+    private static final int EXTENSION_BATCH_SIZE = 100;
+
+    private final MedicationRepository medicationRepository;
+    private final MedicationScheduleRepository medicationScheduleRepository;
+    private final MedicationPartitionService medicationPartitionService;
+    private final MedicationAdherenceService medicationAdherenceService;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // Número de días por delante de hoy cuyas dosis se guardan en la tabla medications
+    @Value("${medication.schedule.horizon-days:14}")
+    private int horizonDays;
+
+    @Override
+    @Transactional
+    public void materializeSchedule(MedicationRequest medicationRequest) {
+        MedicationScheduleEntity schedule = MedicationScheduleCalculator.toSchedule(medicationRequest);
+
+        // El evento puede entregarse más de una vez: si la pauta ya existe, sus dosis ya se generaron
+        // y solo se reconcilian con el MedicationRequest recibido
+        if (medicationScheduleRepository.findByMedicationRequestId(schedule.getMedicationRequestId()).isPresent()) {
+            log.info("La pauta del MedicationRequest {} ya existe; se reconcilia en lugar de regenerarla",
+                    schedule.getMedicationRequestId());
+            reconcileSchedule(medicationRequest);
+            return;
+        }
+
+        List<MedicationEntity> medications = materializeUntil(schedule, horizonDate());
+
+        medicationScheduleRepository.save(schedule);
+        // Todas las dosis del tratamiento se guardan en una sola escritura por lotes (hibernate.jdbc.batch_size)
+        medicationRepository.saveAll(medications);
+        recomputeAdherence(List.of(schedule.getMedicationRequestId()), medications);
+        eventPublisher.publishEvent(new MedicationDosesChangedEvent(schedule.getMedicationRequestId()));
+
+        log.info("Se generaron {} dosis para el MedicationRequest {} (materializado hasta {})",
+                medications.size(), schedule.getMedicationRequestId(), schedule.getMaterializedUntil());
+    }
+
+    @Override
+    @Transactional
+    public void reconcileSchedule(MedicationRequest medicationRequest) {
+        MedicationScheduleEntity schedule = MedicationScheduleCalculator.toSchedule(medicationRequest);
+        String medicationRequestId = schedule.getMedicationRequestId();
+
+        medicationScheduleRepository.findByMedicationRequestId(medicationRequestId)
+                .ifPresent(existing -> schedule.setId(existing.getId()));
+
+        // Solo se reconcilian dosis futuras: las pasadas y las ya registradas forman parte del historial
+        LocalDate today = LocalDate.now();
+        Timestamp now = Timestamp.from(Instant.now());
+        LocalDate horizon = horizonDate();
+        LocalDate until = horizon.isBefore(schedule.getEndDate()) ? horizon : schedule.getEndDate();
+
+        Map<Long, MedicationEntity> desired = new LinkedHashMap<>();
+        MedicationScheduleCalculator.generateDoses(schedule, today, until).stream()
+                .filter(dose -> dose.getTimeOfTaking().after(now))
+                .forEach(dose -> desired.put(dose.getTimeOfTaking().getTime(), dose));
+
+        List<MedicationEntity> toDelete = new ArrayList<>();
+        int updated = 0;
+        for (MedicationEntity existing : medicationRepository
+                .findAllByMedicationRequestIdAndTimeOfTakingAfter(medicationRequestId, now)) {
+            MedicationEntity target = desired.remove(existing.getTimeOfTaking().getTime());
+
+            if (existing.getStatus() != EMedicationStatementStatus.INTENDED) {
+                // Dosis ya registrada por el paciente: se conserva y ocupa su horario
+                continue;
+            }
+
+            if (target == null) {
+                toDelete.add(existing);
+            } else if (copyDoseDetails(target, existing)) {
+                updated++;
+            }
+        }
+
+        List<MedicationEntity> toInsert = new ArrayList<>(desired.values());
+        if (!toDelete.isEmpty()) {
+            medicationRepository.deleteAllByIdInBatch(toDelete.stream().map(MedicationEntity::getId).toList());
+        }
+        medicationRepository.saveAll(toInsert);
+
+        List<MedicationEntity> changed = new ArrayList<>(toInsert);
+        changed.addAll(toDelete);
+        recomputeAdherence(List.of(medicationRequestId), changed);
+
+        schedule.setMaterializedUntil(until);
+        medicationScheduleRepository.save(schedule);
+        eventPublisher.publishEvent(new MedicationDosesChangedEvent(medicationRequestId));
+
+        log.info("MedicationRequest {} reconciliado: {} dosis nuevas, {} eliminadas, {} actualizadas",
+                medicationRequestId, toInsert.size(), toDelete.size(), updated);
+    }
+
+    @Override
+    public void extendHorizon() {
+        // Cada nodo extiende solo las pautas de los pacientes de sus particiones
+        Set<Integer> partitions = medicationPartitionService.getOwnedPartitions();
+        if (partitions.isEmpty()) {
+            log.debug("Este nodo no tiene particiones asignadas; se omite la extensión del horizonte");
+            return;
+        }
+
+        LocalDate horizon = horizonDate();
+        int extendedSchedules = 0;
+        int createdDoses = 0;
+
+        // Cada lote avanza materializedUntil, por lo que deja de aparecer en la siguiente consulta
+        while (true) {
+            int[] batch = transactionTemplate.execute(status -> {
+                List<MedicationScheduleEntity> schedules = medicationScheduleRepository
+                        .findPendingExtension(horizon, medicationPartitionService.getPartitionCount(), partitions,
+                                PageRequest.of(0, EXTENSION_BATCH_SIZE));
+
+                List<MedicationEntity> medications = new ArrayList<>();
+                schedules.forEach(schedule -> medications.addAll(materializeUntil(schedule, horizon)));
+
+                medicationScheduleRepository.saveAll(schedules);
+                medicationRepository.saveAll(medications);
+                recomputeAdherence(schedules.stream().map(MedicationScheduleEntity::getMedicationRequestId).toList(),
+                        medications);
+                return new int[]{schedules.size(), medications.size()};
+            });
+
+            if (batch == null || batch[0] == 0) {
+                break;
+            }
+            extendedSchedules += batch[0];
+            createdDoses += batch[1];
+        }
+
+        log.info("Horizonte de dosis extendido hasta {}: {} pautas, {} dosis nuevas",
+                horizon, extendedSchedules, createdDoses);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<MedicationEntity> getVirtualMedications(String patientId, LocalDate startDate, LocalDate endDate) {
+        List<MedicationScheduleEntity> schedules = medicationScheduleRepository.findWithVirtualDoses(
+                patientId, startDate, endDate, endDate.atTime(LocalTime.MAX));
+
+        List<MedicationEntity> medications = new ArrayList<>();
+        for (MedicationScheduleEntity schedule : schedules) {
+            // Solo los días posteriores a lo ya materializado; lo anterior se lee de la tabla
+            LocalDate from = schedule.getMaterializedUntil().plusDays(1);
+            List<MedicationEntity> doses = MedicationScheduleCalculator.generateDoses(
+                    schedule, from.isAfter(startDate) ? from : startDate, endDate);
+
+            // ID sintético estable (pauta + hora de toma): ordena, pagina y permite actualizar la dosis
+            doses.forEach(dose -> dose.setId(VirtualDoseId.encode(schedule.getId(), dose.getTimeOfTaking())));
+            medications.addAll(doses);
+        }
+
+        return medications;
+    }
+
+    @Override
+    @Transactional
+    public MedicationEntity materializeVirtualDose(long virtualDoseId) {
+        VirtualDoseId doseId = VirtualDoseId.decode(virtualDoseId);
+
+        // Una dosis no se registra con semanas de antelación: solo se materializa dentro del horizonte,
+        // que además está cubierto por las particiones mensuales ya creadas
+        LocalDate doseDate = doseId.timeOfTaking().toLocalDate();
+        if (doseDate.isAfter(horizonDate())) {
+            throw new InvalidRequestException("No se puede actualizar una dosis programada para después del "
+                    + horizonDate());
+        }
+
+        // Bloqueada para no materializar los mismos días que la extensión del horizonte
+        MedicationScheduleEntity schedule = medicationScheduleRepository.findByIdForUpdate(doseId.scheduleId())
+                .orElseThrow(() -> new ResourceNotFoundException("Medicamento no encontrado con ID: " + virtualDoseId));
+
+        if (doseDate.isAfter(schedule.getMaterializedUntil())) {
+            List<MedicationEntity> medications = materializeUntil(schedule, doseDate);
+
+            medicationScheduleRepository.save(schedule);
+            medicationRepository.saveAll(medications);
+            recomputeAdherence(List.of(schedule.getMedicationRequestId()), medications);
+            eventPublisher.publishEvent(new MedicationDosesChangedEvent(schedule.getMedicationRequestId()));
+
+            log.info("MedicationRequest {} materializado hasta {} para actualizar una dosis calculada ({} dosis)",
+                    schedule.getMedicationRequestId(), schedule.getMaterializedUntil(), medications.size());
+        }
+
+        return medicationRepository.findByMedicationRequestIdAndTimeOfTaking(
+                        schedule.getMedicationRequestId(), doseId.timestamp())
+                .orElseThrow(() -> new ResourceNotFoundException("Medicamento no encontrado con ID: " + virtualDoseId));
+    }
+
+    /**
+     * Genera las dosis pendientes de la pauta hasta el horizonte indicado (o el fin del tratamiento)
+     * y avanza su marca materializedUntil.
+     */
+    private List<MedicationEntity> materializeUntil(MedicationScheduleEntity schedule, LocalDate horizon) {
+        LocalDate from = schedule.getMaterializedUntil().plusDays(1);
+        LocalDate until = horizon.isBefore(schedule.getEndDate()) ? horizon : schedule.getEndDate();
+
+        if (until.isBefore(from)) {
+            return new ArrayList<>();
+        }
+
+        List<MedicationEntity> medications = MedicationScheduleCalculator.generateDoses(schedule, from, until);
+        schedule.setMaterializedUntil(until);
+        return medications;
+    }
+
+    /**
+     * Recalcula el resumen diario de adherencia de los días cubiertos por las dosis creadas o eliminadas
+     */
+    private void recomputeAdherence(Collection<String> medicationRequestIds, List<MedicationEntity> doses) {
+        if (doses.isEmpty()) {
+            return;
+        }
+
+        LocalDate from = doses.stream().map(MedicationEntity::getDate).min(Comparator.naturalOrder()).orElseThrow();
+        LocalDate to = doses.stream().map(MedicationEntity::getDate).max(Comparator.naturalOrder()).orElseThrow();
+
+        // El recálculo es SQL nativo: las inserciones pendientes deben llegar antes a la base de datos
+        medicationRepository.flush();
+        medicationAdherenceService.recompute(medicationRequestIds, from, to);
+    }
+
+    /**
+     * Copia nombre, dosis y patrón de la dosis calculada a la existente.
+     *
+     * @return true si la dosis existente ha cambiado (se actualiza al cerrar la transacción)
+     */
+    private boolean copyDoseDetails(MedicationEntity source, MedicationEntity target) {
+        boolean changed = !Objects.equals(source.getNameMedicine(), target.getNameMedicine())
+                || !Objects.equals(source.getDoseUnit(), target.getDoseUnit())
+                || source.getDoseValue().compareTo(target.getDoseValue()) != 0
+                || !Objects.equals(source.getSchedulePattern(), target.getSchedulePattern())
+                || source.isIrregular() != target.isIrregular();
+
+        if (changed) {
+            target.setNameMedicine(source.getNameMedicine());
+            target.setDoseValue(source.getDoseValue());
+            target.setDoseUnit(source.getDoseUnit());
+            target.setSchedulePattern(source.getSchedulePattern());
+            target.setIrregular(source.isIrregular());
+        }
+        return changed;
+    }
+
+    private LocalDate horizonDate() {
+        return LocalDate.now().plusDays(horizonDays);
+    }
+}
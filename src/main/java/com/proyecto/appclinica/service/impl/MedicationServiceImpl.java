@@ -1,22 +1,31 @@
 package com.proyecto.appclinica.service.impl;
 
 import com.proyecto.appclinica.event.medication.MedicationCompletedEvent;
-import com.proyecto.appclinica.event.medication.MedicationReminderEvent;
+import com.proyecto.appclinica.event.medication.MedicationDosesChangedEvent;
+import com.proyecto.appclinica.exception.InvalidRequestException;
 import com.proyecto.appclinica.exception.ResourceNotFoundException;
 import com.proyecto.appclinica.exception.StatusException;
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationDoseView;
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationPageDto;
 import com.proyecto.appclinica.model.dto.treatment.medication.MedicationResponseDto;
 import com.proyecto.appclinica.model.dto.treatment.medication.MedicationStatusUpdateDto;
 import com.proyecto.appclinica.model.entity.EMedicationStatementStatus;
 import com.proyecto.appclinica.model.entity.MedicationEntity;
-import com.proyecto.appclinica.model.entity.MedicationSettings;
-import com.proyecto.appclinica.model.entity.UserSettings;
 import com.proyecto.appclinica.repository.MedicationRepository;
-import com.proyecto.appclinica.repository.UserSettingsRepository;
+import com.proyecto.appclinica.service.MedicationAdherenceService;
+import com.proyecto.appclinica.service.MedicationPartitionService;
+import com.proyecto.appclinica.service.MedicationReminderService;
+import com.proyecto.appclinica.service.MedicationScheduleService;
 import com.proyecto.appclinica.service.MedicationService;
+import com.proyecto.appclinica.service.OutboxService;
+import com.proyecto.appclinica.util.MedicationCursor;
+import com.proyecto.appclinica.util.VirtualDoseId;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Timestamp;
 import java.time.LocalDate;
@@ -24,22 +33,27 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class MedicationServiceImpl implements MedicationService {
 
+    private static final int MAX_PAGE_SIZE = 500;
+
+    // Días de dosis calculadas que se generan de una vez al paginar o transmitir rangos largos
+    private static final int VIRTUAL_CHUNK_DAYS = 31;
+
     private final MedicationRepository medicationRepository;
-    private final UserSettingsRepository userSettingsRepository;
+    private final MedicationScheduleService medicationScheduleService;
+    private final MedicationPartitionService medicationPartitionService;
+    private final MedicationReminderService medicationReminderService;
+    private final MedicationAdherenceService medicationAdherenceService;
     private final ApplicationEventPublisher eventPublisher;
-    private final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
-
-    // Mapa para llevar conteo de recordatorios enviados por medicamento
-    private final Map<String, Integer> reminderAttempts = new HashMap<>();
+    private final OutboxService outboxService;
 
     @Override
     public List<MedicationResponseDto> getMedicationsToday(String patientId) {
@@ -48,6 +62,7 @@ public class MedicationServiceImpl implements MedicationService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<MedicationResponseDto> getMedicationsByDate(String patientId, LocalDate date) {
         // Calculamos el inicio y fin del día
         LocalDateTime startOfDay = date.atStartOfDay(); // Inicio del día a las 00:00
@@ -57,89 +72,122 @@ public class MedicationServiceImpl implements MedicationService {
         Timestamp startTimestamp = Timestamp.valueOf(startOfDay);
         Timestamp endTimestamp = Timestamp.valueOf(endOfDay);
 
-        // Buscamos medicamentos del paciente para este rango de tiempo
-        List<MedicationEntity> medications = medicationRepository.findAllByPatientIdAndTimeOfTakingBetween(
+        // Buscamos medicamentos del paciente para este rango de tiempo, ya ordenados por hora de toma
+        List<MedicationDoseView> medications = medicationRepository.findDoseViews(
                 patientId, startTimestamp, endTimestamp);
 
-        // Ordenamos los medicamentos por hora de toma antes de convertir a DTOs
-        medications.sort(Comparator.comparing(MedicationEntity::getTimeOfTaking));
-
-        // Convertimos las entidades a DTOs
-        return medications.stream()
-                .map(this::mapToResponseDto)
-                .toList();
+        // Añadimos las dosis calculadas de los días que aún no están materializados
+        return toResponseDtos(medications, medicationScheduleService.getVirtualMedications(patientId, date, date));
     }
 
     @Override
-    public List<MedicationResponseDto> getMedicationsInDateRange(String patientId, LocalDate startDate, LocalDate endDate) {
-        // Calculamos el inicio y fin de los días respectivos
-        LocalDateTime startDateTime = startDate.atStartOfDay();
-        LocalDateTime endDateTime = endDate.atTime(LocalTime.MAX);
-
-        // Convertimos a timestamp para la consulta
-        Timestamp startTimestamp = Timestamp.valueOf(startDateTime);
-        Timestamp endTimestamp = Timestamp.valueOf(endDateTime);
+    @Transactional(readOnly = true)
+    public MedicationPageDto getMedicationsPage(String patientId, LocalDate startDate, LocalDate endDate,
+                                                EMedicationStatementStatus status, String cursor, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new InvalidRequestException("El tamaño de página debe estar entre 1 y " + MAX_PAGE_SIZE);
+        }
 
-        // Buscamos medicamentos del paciente para este rango de fechas
-        List<MedicationEntity> medications = medicationRepository.findAllByPatientIdAndTimeOfTakingBetween(
-                patientId, startTimestamp, endTimestamp);
+        Timestamp startTimestamp = Timestamp.valueOf(startDate.atStartOfDay());
+        Timestamp endTimestamp = Timestamp.valueOf(endDate.atTime(LocalTime.MAX));
+
+        // Sin cursor se empieza desde el inicio del rango
+        MedicationCursor after = cursor != null
+                ? MedicationCursor.decode(cursor)
+                : new MedicationCursor(startDate.atStartOfDay(), Long.MIN_VALUE);
+
+        // Se pide un elemento de más a cada origen para saber si existe una página siguiente, más las dosis
+        // ya devueltas a la hora del cursor que ahora pueden venir materializadas (se descartan aquí)
+        List<MedicationDoseView> medications = new ArrayList<>(medicationRepository.findDoseViewsAfter(
+                patientId, startTimestamp, endTimestamp, status, after.timestamp(), after.id(),
+                Limit.of(size + 1 + after.medicationRequestIds().size())));
+        medications.removeIf(dose -> !after.isBefore(dose));
+
+        // Las dosis no materializadas siempre están pendientes (INTENDED)
+        if (status == null || status == EMedicationStatementStatus.INTENDED) {
+            LocalDate cursorDate = after.timeOfTaking().toLocalDate();
+            Iterator<MedicationDoseView> virtual = virtualDoses(
+                    patientId, cursorDate.isAfter(startDate) ? cursorDate : startDate, endDate);
+
+            int added = 0;
+            while (added <= size && virtual.hasNext()) {
+                MedicationDoseView dose = virtual.next();
+                if (after.isBefore(dose)) {
+                    medications.add(dose);
+                    added++;
+                }
+            }
+            medications.sort(MedicationDoseView.ORDER);
+        }
 
-        // Ordenamos los medicamentos por hora de toma antes de convertir a DTOs
-        medications.sort(Comparator.comparing(MedicationEntity::getTimeOfTaking));
+        boolean hasMore = medications.size() > size;
+        List<MedicationDoseView> page = hasMore ? medications.subList(0, size) : medications;
+        String nextCursor = hasMore ? MedicationCursor.after(page, after).encode() : null;
 
-        // Convertimos las entidades a DTOs
-        return medications.stream()
-                .map(this::mapToResponseDto)
-                .toList();
+        return new MedicationPageDto(
+                page.stream().map(MedicationDoseView::toResponseDto).toList(),
+                nextCursor);
     }
 
     @Override
-    public List<MedicationResponseDto> getMedicationsByDateRangeAndStatus(String patientId, LocalDate startDate, LocalDate endDate, String status) {
-        // Calculamos el inicio y fin de los días respectivos
-        LocalDateTime startDateTime = startDate.atStartOfDay();
-        LocalDateTime endDateTime = endDate.atTime(LocalTime.MAX);
-
-        // Convertimos a timestamp para la consulta
-        Timestamp startTimestamp = Timestamp.valueOf(startDateTime);
-        Timestamp endTimestamp = Timestamp.valueOf(endDateTime);
-
-        List<MedicationEntity> medications;
-
-        // Convertimos el string de estado a enumeración
-        try {
-            EMedicationStatementStatus medicationStatus = EMedicationStatementStatus.valueOf(status);
-
-            // Buscamos medicamentos del paciente para este rango de fechas y con el estado específico
-            medications = medicationRepository.findAllByPatientIdAndTimeOfTakingBetweenAndStatus(
-                    patientId, startTimestamp, endTimestamp, medicationStatus);
-        } catch (IllegalArgumentException e) {
-            throw new StatusException("Estado de medicamento no válido: " + status);
+    @Transactional(readOnly = true)
+    public void streamMedications(String patientId, LocalDate startDate, LocalDate endDate,
+                                  EMedicationStatementStatus status, Consumer<MedicationResponseDto> consumer) {
+        Timestamp startTimestamp = Timestamp.valueOf(startDate.atStartOfDay());
+        Timestamp endTimestamp = Timestamp.valueOf(endDate.atTime(LocalTime.MAX));
+
+        Iterator<MedicationDoseView> virtual = status == null || status == EMedicationStatementStatus.INTENDED
+                ? virtualDoses(patientId, startDate, endDate)
+                : Collections.emptyIterator();
+
+        try (Stream<MedicationDoseView> stream = medicationRepository.streamDoseViews(
+                patientId, startTimestamp, endTimestamp, status)) {
+            Iterator<MedicationDoseView> stored = stream.iterator();
+            MedicationDoseView nextStored = stored.hasNext() ? stored.next() : null;
+            MedicationDoseView nextVirtual = virtual.hasNext() ? virtual.next() : null;
+
+            // Mezcla ordenada de las dos fuentes; ninguna se carga completa en memoria
+            while (nextStored != null || nextVirtual != null) {
+                if (nextVirtual == null || (nextStored != null && MedicationDoseView.ORDER.compare(nextStored, nextVirtual) <= 0)) {
+                    consumer.accept(nextStored.toResponseDto());
+                    nextStored = stored.hasNext() ? stored.next() : null;
+                } else {
+                    consumer.accept(nextVirtual.toResponseDto());
+                    nextVirtual = virtual.hasNext() ? virtual.next() : null;
+                }
+            }
         }
-
-        // Ordenamos los medicamentos por hora de toma antes de convertir a DTOs
-        medications.sort(Comparator.comparing(MedicationEntity::getTimeOfTaking));
-
-        // Convertimos las entidades a DTOs
-        return medications.stream()
-                .map(this::mapToResponseDto)
-                .toList();
     }
 
     @Override
+    @Transactional
     public MedicationResponseDto updateMedicationStatus(MedicationStatusUpdateDto updateDto) {
-        // Buscamos el medicamento por su ID
-        MedicationEntity medication = medicationRepository.findById(updateDto.medicationId())
+        // Una dosis calculada (ID negativo) se guarda primero en la tabla para actualizarla como las demás
+        Long medicationId = VirtualDoseId.isVirtual(updateDto.medicationId())
+                ? medicationScheduleService.materializeVirtualDose(updateDto.medicationId()).getId()
+                : updateDto.medicationId();
+
+        // Buscamos el medicamento por su ID (bloqueado hasta el final de la transacción)
+        MedicationEntity medication = medicationRepository.findByIdForUpdate(medicationId)
                 .orElseThrow(() -> new ResourceNotFoundException("Medicamento no encontrado con ID: " + updateDto.medicationId()));
 
         // Actualizamos el estado
         try {
             EMedicationStatementStatus newStatus = EMedicationStatementStatus.valueOf(updateDto.status());
+            EMedicationStatementStatus oldStatus = medication.getStatus();
             medication.setStatus(newStatus);
 
-            // Si el estado es COMPLETED, publicamos el evento y reseteamos conteo de recordatorios
+            // Movemos la dosis entre los conteos del resumen diario de adherencia
+            medicationAdherenceService.applyStatusChange(medication, oldStatus, newStatus);
+
+            // Si el estado es COMPLETED, publicamos el evento
             if (newStatus == EMedicationStatementStatus.COMPLETED) {
-                eventPublisher.publishEvent(new MedicationCompletedEvent(medication, medication.getPatientId()));
-                reminderAttempts.remove(medication.getMedicationRequestId());
+                outboxService.publish(new MedicationCompletedEvent(medication, medication.getPatientId()));
+            }
+
+            // Una dosis que deja de estar pendiente no recibe más recordatorios
+            if (newStatus != EMedicationStatementStatus.INTENDED) {
+                medicationReminderService.clearReminders(medication.getId());
             }
         } catch (IllegalArgumentException e) {
             throw new StatusException("Estado de medicamento no válido: " + updateDto.status());
@@ -148,12 +196,22 @@ public class MedicationServiceImpl implements MedicationService {
         // Guardamos los cambios
         MedicationEntity updatedMedication = medicationRepository.save(medication);
 
+        // El temporizador de vencimientos recalcula los plazos del tratamiento
+        eventPublisher.publishEvent(new MedicationDosesChangedEvent(updatedMedication.getMedicationRequestId()));
+
         // Devolvemos el DTO actualizado
-        return mapToResponseDto(updatedMedication);
+        return MedicationDoseView.of(updatedMedication).toResponseDto();
     }
 
     @Override
     public void checkPendingMedications() {
+        // Solo se procesan los pacientes de las particiones asignadas a este nodo
+        Set<Integer> partitions = medicationPartitionService.getOwnedPartitions();
+        if (partitions.isEmpty()) {
+            log.debug("Este nodo no tiene particiones asignadas; se omite la verificación de medicamentos");
+            return;
+        }
+
         // Definimos explícitamente la zona horaria que usaremos para todas las operaciones
         ZoneId zoneId = ZoneId.of("America/Lima");
 
@@ -167,76 +225,83 @@ public class MedicationServiceImpl implements MedicationService {
         Timestamp startTimestamp = Timestamp.valueOf(startOfDay);
         Timestamp nowTimestamp = Timestamp.valueOf(now);
 
-        // Buscamos medicamentos con estado INTENDED cuya hora programada ya haya pasado
-        List<MedicationEntity> activeMedications = medicationRepository.findAllByStatusAndTimeOfTakingBetween(
-                EMedicationStatementStatus.INTENDED, startTimestamp, nowTimestamp);
-
-        for (MedicationEntity medication : activeMedications) {
-            String patientId = medication.getPatientId();
-
-            // Convertimos el timestamp a LocalDateTime y luego a ZonedDateTime en nuestra zona horaria
-            LocalDateTime scheduledLocalTime = medication.getTimeOfTaking().toLocalDateTime();
-            ZonedDateTime scheduledTime = scheduledLocalTime.atZone(zoneId);
+        // Una sola sentencia UPDATE: la ventana de tolerancia de cada paciente se resuelve en la base de datos
+        List<Long> notTakenIds = medicationRepository.markExpiredAsNotTaken(
+                startTimestamp, nowTimestamp, medicationPartitionService.getPartitionCount(), partitions);
 
-            // Obtenemos la configuración de medicamentos del usuario
-            Optional<UserSettings> userSettingsOpt = userSettingsRepository.findByPatientId(patientId);
-
-            // Si no hay configuración, usamos valores por defecto
-            MedicationSettings medicationSettings = userSettingsOpt
-                    .map(UserSettings::getMedicationSettings)
-                    .orElse(MedicationSettings.builder().build());
-
-            int toleranceWindowMinutes = medicationSettings.getToleranceWindowMinutes();
+        if (notTakenIds.isEmpty()) {
+            log.debug("No hay medicamentos fuera de la ventana de tolerancia a las {}", nowZoned);
+            return;
+        }
 
-            // Calculamos los minutos desde la hora programada usando ZonedDateTime para asegurar
-            // que la comparación sea correcta considerando la zona horaria
-            long minutesElapsed = ChronoUnit.MINUTES.between(scheduledTime, nowZoned);
+        log.info("{} medicamentos marcados como NOT_TAKEN a las {}: {}", notTakenIds.size(), nowZoned, notTakenIds);
+    }
 
-            // Solo marcamos como NOT_TAKEN si ha pasado la ventana de tolerancia y está en estado INTENDED
-            if (minutesElapsed > toleranceWindowMinutes) {
-                // Actualizamos el estado a NOT_TAKEN
-                medication.setStatus(EMedicationStatementStatus.NOT_TAKEN);
-                medicationRepository.save(medication);
+    @Override
+    public List<Long> expireMedications(Collection<Long> medicationIds) {
+        // Solo se actualizan las que siguen pendientes; el paciente pudo registrarlas justo antes de vencer
+        List<Long> notTakenIds = medicationRepository.markAsNotTaken(medicationIds);
 
-                // Log para depuración
-                log.info("Medicamento {} marcado como NOT_TAKEN. Tiempo programado: {}, minutos transcurridos: {}, ventana de tolerancia: {}",
-                        medication.getId(), scheduledTime, minutesElapsed, toleranceWindowMinutes);
-            } else {
-                log.debug("Medicamento {} aún dentro de la ventana de tolerancia. Minutos transcurridos: {}, ventana: {}",
-                        medication.getId(), minutesElapsed, toleranceWindowMinutes);
-            }
+        if (!notTakenIds.isEmpty()) {
+            log.info("{} medicamentos marcados como NOT_TAKEN al vencer su ventana de tolerancia: {}",
+                    notTakenIds.size(), notTakenIds);
         }
+        return notTakenIds;
     }
 
     /**
-     * Envía un recordatorio al paciente sobre un medicamento pendiente
+     * Recorre en orden las dosis calculadas del rango, generándolas por bloques de días a medida que se consumen
      */
-    private void sendMedicationReminder(MedicationEntity medication, int attemptNumber) {
-        // Publicamos evento de recordatorio de medicamento
-        eventPublisher.publishEvent(new MedicationReminderEvent(
-                medication,
-                medication.getPatientId(),
-                attemptNumber
-        ));
-    }
+    private Iterator<MedicationDoseView> virtualDoses(String patientId, LocalDate startDate, LocalDate endDate) {
+        return new Iterator<>() {
+            private LocalDate nextDay = startDate;
+            private Iterator<MedicationDoseView> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && !nextDay.isAfter(endDate)) {
+                    LocalDate chunkEnd = nextDay.plusDays(VIRTUAL_CHUNK_DAYS - 1L);
+                    if (chunkEnd.isAfter(endDate)) {
+                        chunkEnd = endDate;
+                    }
+
+                    current = medicationScheduleService.getVirtualMedications(patientId, nextDay, chunkEnd).stream()
+                            .map(MedicationDoseView::of)
+                            .sorted(MedicationDoseView.ORDER)
+                            .iterator();
+                    nextDay = chunkEnd.plusDays(1);
+                }
+                return current.hasNext();
+            }
 
-    private MedicationResponseDto mapToResponseDto(MedicationEntity entity) {
-        // Formateamos la dosis como "valor unidad" (ej: "10 mg")
-        String formattedDose = entity.getDoseValue() + " " + entity.getDoseUnit();
+            @Override
+            public MedicationDoseView next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
 
-        // Formateamos la hora como "HH:mm"
-        String formattedTime = entity.getTimeOfTaking().toLocalDateTime().format(timeFormatter);
+    /**
+     * Convierte a DTOs las dosis guardadas (ya ordenadas por la consulta) intercalando por hora de toma
+     * las dosis calculadas de los días no materializados.
+     */
+    private List<MedicationResponseDto> toResponseDtos(List<MedicationDoseView> stored, List<MedicationEntity> virtual) {
+        if (virtual.isEmpty()) {
+            return stored.stream()
+                    .map(MedicationDoseView::toResponseDto)
+                    .toList();
+        }
 
-        // Formateamos la fecha como "yyyy-MM-dd" (formato ISO)
-        String formattedDate = entity.getDate().toString();
+        List<MedicationDoseView> medications = new ArrayList<>(stored.size() + virtual.size());
+        medications.addAll(stored);
+        virtual.forEach(medication -> medications.add(MedicationDoseView.of(medication)));
+        medications.sort(MedicationDoseView.ORDER);
 
-        return new MedicationResponseDto(
-                entity.getId(),
-                entity.getNameMedicine(),
-                formattedDose,
-                formattedTime,
-                formattedDate,
-                entity.getStatus().getDescription()
-        );
+        return medications.stream()
+                .map(MedicationDoseView::toResponseDto)
+                .toList();
     }
 }
@@ -0,0 +1,181 @@
+package com.proyecto.appclinica.service.impl;
+
+import com.proyecto.appclinica.event.medication.MedicationCompletedEvent;
+import com.proyecto.appclinica.event.medication.MedicationRequestCreatedEvent;
+import com.proyecto.appclinica.event.medication.MedicationRequestUpdatedEvent;
+import com.proyecto.appclinica.event.outbox.OutboxEventCodec;
+import com.proyecto.appclinica.exception.FhirMedicationStatementException;
+import com.proyecto.appclinica.model.entity.OutboxEventEntity;
+import com.proyecto.appclinica.repository.OutboxEventRepository;
+import com.proyecto.appclinica.service.MedicationStatementService;
+import com.proyecto.appclinica.service.OutboxService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OutboxServiceImpl implements OutboxService {
+
+    private static final int MAX_ERROR_LENGTH = 2000;
+    private static final String MEDICATION_COMPLETED_EVENT = MedicationCompletedEvent.class.getSimpleName();
+    // Tipos cuyos eventos de un mismo agregado deben aplicarse en orden (alta y cambios de un MedicationRequest)
+    private static final List<String> ORDERED_EVENT_TYPES = List.of(
+            MedicationRequestCreatedEvent.class.getSimpleName(), MedicationRequestUpdatedEvent.class.getSimpleName());
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxEventCodec outboxEventCodec;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MedicationStatementService medicationStatementService;
+    // Ejecutores por nombre de bean (ver AsyncConfig)
+    private final Map<String, TaskExecutor> executors;
+
+    @Value("${outbox.batch-size:100}")
+    private int batchSize;
+
+    // Tiempo durante el que un evento reclamado no puede tomarlo otro nodo
+    @Value("${outbox.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    // Espera tras el primer fallo; se duplica en cada intento hasta max-backoff-seconds
+    @Value("${outbox.backoff-seconds:5}")
+    private long backoffSeconds;
+
+    @Value("${outbox.max-backoff-seconds:3600}")
+    private long maxBackoffSeconds;
+
+    @Override
+    @Transactional
+    public void publish(Object event) {
+        OutboxEventEntity row = outboxEventRepository.save(outboxEventCodec.encode(event));
+        log.debug("Evento {} guardado en el outbox con ID {}", row.getEventType(), row.getId());
+    }
+
+    @Override
+    public void dispatchPending() {
+        List<OutboxEventEntity> batch;
+        do {
+            LocalDateTime now = LocalDateTime.now();
+            batch = outboxEventRepository.claimBatch(now, now.plusSeconds(leaseSeconds), maxAttempts,
+                    ORDERED_EVENT_TYPES, batchSize);
+            List<OutboxEventEntity> completedDoses = new ArrayList<>();
+            for (OutboxEventEntity row : batch) {
+                if (MEDICATION_COMPLETED_EVENT.equals(row.getEventType())) {
+                    completedDoses.add(row);
+                } else {
+                    dispatch(row);
+                }
+            }
+            if (!completedDoses.isEmpty()) {
+                dispatchCompletedDoses(completedDoses);
+            }
+
+            if (!batch.isEmpty()) {
+                log.debug("Despachados {} eventos del outbox", batch.size());
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    private void dispatch(OutboxEventEntity row) {
+        TaskExecutor executor = executors.get(outboxEventCodec.executorFor(row.getEventType()));
+
+        // Los listeners son síncronos: la fila se elimina solo cuando han terminado sin errores
+        executor.execute(() -> {
+            try {
+                Optional<Object> event = outboxEventCodec.decode(row);
+                if (event.isPresent()) {
+                    eventPublisher.publishEvent(event.get());
+                } else {
+                    log.warn("El evento {} del outbox ({}) ya no tiene entidad de origen; se descarta",
+                            row.getId(), row.getEventType());
+                }
+                outboxEventRepository.deleteById(row.getId());
+            } catch (Exception e) {
+                markFailed(row, e);
+            }
+        });
+    }
+
+    /**
+     * Las tomas completadas se envían juntas a FHIR en Bundles transaction. Las filas del outbox son el búfer:
+     * cada una se elimina solo si su MedicationStatement fue aceptado; las demás se reintentan con backoff.
+     */
+    private void dispatchCompletedDoses(List<OutboxEventEntity> rows) {
+        TaskExecutor executor = executors.get(outboxEventCodec.executorFor(MEDICATION_COMPLETED_EVENT));
+
+        executor.execute(() -> {
+            List<OutboxEventEntity> eventRows = new ArrayList<>();
+            List<MedicationCompletedEvent> events = new ArrayList<>();
+            for (OutboxEventEntity row : rows) {
+                try {
+                    Optional<Object> event = outboxEventCodec.decode(row);
+                    if (event.isPresent()) {
+                        eventRows.add(row);
+                        events.add((MedicationCompletedEvent) event.get());
+                    } else {
+                        log.warn("El evento {} del outbox ({}) ya no tiene entidad de origen; se descarta",
+                                row.getId(), row.getEventType());
+                        outboxEventRepository.deleteById(row.getId());
+                    }
+                } catch (Exception e) {
+                    markFailed(row, e);
+                }
+            }
+
+            if (events.isEmpty()) {
+                return;
+            }
+
+            Set<Long> accepted;
+            try {
+                accepted = medicationStatementService.createCompletedMedicationStatements(events);
+            } catch (Exception e) {
+                eventRows.forEach(row -> markFailed(row, e));
+                return;
+            }
+
+            List<Long> delivered = new ArrayList<>();
+            for (int i = 0; i < events.size(); i++) {
+                Long doseId = events.get(i).getMedication().getId();
+                if (accepted.contains(doseId)) {
+                    delivered.add(eventRows.get(i).getId());
+                } else {
+                    markFailed(eventRows.get(i), new FhirMedicationStatementException(
+                            "FHIR no aceptó el MedicationStatement de la dosis " + doseId));
+                }
+            }
+            outboxEventRepository.deleteAllByIdInBatch(delivered);
+        });
+    }
+
+    private void markFailed(OutboxEventEntity row, Exception e) {
+        // attempts ya se incrementó al reclamar la fila
+        long backoff = Math.min(maxBackoffSeconds, backoffSeconds << Math.min(row.getAttempts() - 1, 30));
+        String error = String.valueOf(e.getMessage());
+        outboxEventRepository.markFailed(row.getId(), LocalDateTime.now().plusSeconds(backoff),
+                error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+
+        if (row.getAttempts() >= maxAttempts) {
+            log.error("El evento {} del outbox ({}) agotó sus {} intentos; queda retenido para revisión",
+                    row.getId(), row.getEventType(), maxAttempts, e);
+        } else {
+            log.warn("Error al despachar el evento {} del outbox ({}), intento {}; se reintenta en {} s: {}",
+                    row.getId(), row.getEventType(), row.getAttempts(), backoff, e.getMessage());
+        }
+    }
+}
@@ -1,42 +1,57 @@
 package com.proyecto.appclinica.service.impl;
 
-import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.rest.client.api.IGenericClient;
 import com.proyecto.appclinica.model.dto.PatientHistoryResponse;
+import com.proyecto.appclinica.model.entity.PatientHistoryStateEntity;
+import com.proyecto.appclinica.repository.FhirPatientHistoryRepository;
+import com.proyecto.appclinica.repository.PatientHistoryStateRepository;
+import com.proyecto.appclinica.repository.VectorStoreDocumentRepository;
 import com.proyecto.appclinica.service.PatientHistoryService;
+import com.proyecto.appclinica.util.FhirDigestEncoder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.r4.model.Bundle;
-import org.hl7.fhir.r4.model.Condition;
-import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.MedicationRequest;
 import org.hl7.fhir.r4.model.Procedure;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.document.DocumentTransformer;
-import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
-import java.util.Map;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class PatientHistoryServiceImpl implements PatientHistoryService {
-    private final IGenericClient fhirClient;
-    private final FhirContext fhirContext;
+    private static final String HISTORY_CATEGORY = "patient_history";
+    // Margen que se vuelve a consultar antes de la marca, por escrituras que se confirman con una fecha anterior
+    private static final long WATERMARK_OVERLAP_SECONDS = 5;
+
+    private final FhirPatientHistoryRepository fhirPatientHistoryRepository;
+    private final PatientHistoryStateRepository patientHistoryStateRepository;
+    private final TransactionTemplate transactionTemplate;
     private final ChatClient chatClient;
     private final VectorStore vectorStore;
+    private final VectorStoreDocumentRepository vectorStoreDocumentRepository;
     private final DocumentTransformer documentTransformer;
 
     @Value("classpath:prompts/history-summary")
     private Resource promptHistorySummary;
 
+    @Value("classpath:prompts/history-merge")
+    private Resource promptHistoryMerge;
+
+    // Las fusiones acumulan imprecisiones del modelo: cada cierto tiempo el resumen se regenera desde cero
+    @Value("${patient-history.full-rebuild-days:30}")
+    private int fullRebuildDays;
+
     @Override
     public PatientHistoryResponse createPatientHistory(String patientId) {
         LocalDate today = LocalDate.now();
@@ -49,37 +64,81 @@ public class PatientHistoryServiceImpl implements PatientHistoryService {
     public PatientHistoryResponse createPatientHistory(String patientId, LocalDate fromDate, LocalDate toDate) {
 
         try {
-            // Formatear las fechas para FHIR
-            String fromDateStr = fromDate.format(DateTimeFormatter.ISO_LOCAL_DATE);
-            String toDateStr = toDate.format(DateTimeFormatter.ISO_LOCAL_DATE);
+            // Si ya hay un resumen, solo se piden los recursos modificados desde su marca _lastUpdated (con margen),
+            // salvo que toque reconstruirlo desde cero
+            Optional<PatientHistoryStateEntity> storedState = patientHistoryStateRepository.findById(patientId);
+            Optional<PatientHistoryStateEntity> state = storedState.filter(s -> !needsFullRebuild(s, fromDate));
+            if (storedState.isPresent() && state.isEmpty()) {
+                log.info("El resumen del historial del paciente {} se reconstruye desde cero (última reconstrucción: {})",
+                        patientId, storedState.get().getRebuiltAt());
+            }
+
+            Date since = state.map(s -> toDate(s.getLastUpdated().minusSeconds(WATERMARK_OVERLAP_SECONDS)))
+                    .orElse(null);
+
+            // Paciente, condiciones, procedimientos y tratamientos en una sola petición ($everything)
+            Bundle combinedBundle = fhirPatientHistoryRepository.getPatientHistory(patientId, fromDate, toDate, since);
 
-            // Obtener el historial del paciente
-            Patient patient = fhirClient.read()
-                    .resource(Patient.class)
-                    .withId(patientId)
-                    .execute();
+            Set<String> boundary = state.map(s -> parseBoundary(s.getBoundaryVersions())).orElse(Set.of());
+            if (since != null) {
+                // Fuera quedan las versiones ya resumidas del margen y lo anterior a él (p. ej. el Patient,
+                // que $everything puede devolver siempre)
+                combinedBundle.getEntry().removeIf(entry -> {
+                    Date lastUpdated = entry.getResource().getMeta().getLastUpdated();
+                    return lastUpdated == null || lastUpdated.before(since)
+                            || boundary.contains(versionKey(entry));
+                });
+            }
 
-            Bundle conditions = getConditions(patientId);
-            Bundle procedures = getProcedures(patientId, fromDateStr, toDateStr);
-            Bundle treatments = getTreatments(patientId, fromDateStr, toDateStr);
+            if (state.isPresent() && combinedBundle.getEntry().isEmpty()) {
+                log.info("El historial del paciente {} no tiene cambios desde {}", patientId, state.get().getLastUpdated());
+                return PatientHistoryResponse.builder()
+                        .patientId(patientId)
+                        .message("El historial del paciente ya está actualizado.")
+                        .build();
+            }
 
-            // Combinar los recursos obtenidos
-            Bundle combinedBundle = combineBundles(conditions, procedures, treatments, patient);
+            log.info("Historial del paciente {} desde {} hasta {}: {} recursos {}",
+                    patientId, fromDate, toDate, combinedBundle.getEntry().size(),
+                    state.isPresent() ? "modificados" : "encontrados");
 
-            log.info("Historial del paciente {} desde {} hasta {}: {} recursos encontrados",
-                    patientId, fromDate, toDate, combinedBundle.getEntry().size());
+            // El modelo recibe un resumen compacto del Bundle en lugar del JSON FHIR completo, con la referencia
+            // de cada recurso para poder sustituir sus versiones anteriores al fusionar
+            String historyDigest = FhirDigestEncoder.encode(combinedBundle, true);
 
-            String historyJson = fhirContext.newJsonParser().setPrettyPrint(true).encodeResourceToString(combinedBundle);
+            // Crear el resumen o fusionar los cambios con el existente utilizando el modelo de chat
+            String historySummary = state.isPresent()
+                    ? mergeHistorySummary(state.get().getSummary(), historyDigest)
+                    : createHistorySummary(historyDigest);
 
-            // Crear un resumen del historial utilizando el modelo de chat
-            String historySummary = createHistorySummary(historyJson);
+            LocalDateTime watermark = latestUpdate(combinedBundle)
+                    .orElseGet(() -> state.map(PatientHistoryStateEntity::getLastUpdated)
+                            .orElse(fromDate.atStartOfDay()));
 
-            // Guardar el resumen en el VectorStore
-            saveToVectorStore(historySummary, patientId);
+            PatientHistoryStateEntity newState = storedState.orElseGet(() -> PatientHistoryStateEntity.builder()
+                    .patientId(patientId)
+                    .build());
+            Optional<LocalDate> oldestItem = oldestItem(combinedBundle);
+            if (state.isPresent()) {
+                oldestItem.filter(date -> newState.getOldestItem() == null || date.isBefore(newState.getOldestItem()))
+                        .ifPresent(newState::setOldestItem);
+            } else {
+                newState.setOldestItem(oldestItem.orElse(null));
+                newState.setRebuiltAt(LocalDateTime.now());
+            }
+            newState.setSummary(historySummary);
+            newState.setLastUpdated(watermark);
+            newState.setBoundaryVersions(nextBoundary(boundary, combinedBundle, watermark));
+            newState.setUpdatedAt(LocalDateTime.now());
+
+            // Reemplazar el resumen en el VectorStore
+            replaceInVectorStore(newState);
 
             return PatientHistoryResponse.builder()
                     .patientId(patientId)
-                    .message("Historial del paciente creado correctamente.")
+                    .message(storedState.isPresent()
+                            ? "Historial del paciente actualizado correctamente."
+                            : "Historial del paciente creado correctamente.")
                     .build();
 
         } catch (Exception e) {
@@ -90,76 +149,122 @@ public class PatientHistoryServiceImpl implements PatientHistoryService {
 
     @Override
     public List<Document> getPatientHistory(String patientId) {
-        return vectorStore.similaritySearch(SearchRequest.builder()
-                .query("Historial del paciente " + patientId)
-                .filterExpression("patient_id == '" + patientId + "'")
-                .build());
+        // Consulta directa por metadatos: sin embedding de la consulta ni búsqueda por similitud
+        return vectorStoreDocumentRepository.findByPatientId(patientId);
     }
 
-    private Bundle getConditions(String patientId) {
-        return fhirClient.search()
-                .forResource(Condition.class)
-                .where(Condition.PATIENT.hasId(patientId))
-                .returnBundle(Bundle.class)
-                .execute();
+    private String createHistorySummary(String historyDigest) {
+        return chatClient.prompt(historyDigest)
+                .system(promptHistorySummary)
+                .call()
+                .content();
     }
 
-    private Bundle getProcedures(String patientId, String fromDateStr, String toDateStr) {
-        return fhirClient.search()
-                .forResource(Procedure.class)
-                .where(Procedure.PATIENT.hasId(patientId))
-                .and(Procedure.DATE.afterOrEquals().day(fromDateStr))
-                .and(Procedure.DATE.beforeOrEquals().day(toDateStr))
-                .returnBundle(Bundle.class)
-                .execute();
+    private String mergeHistorySummary(String currentSummary, String changesDigest) {
+        return chatClient.prompt("RESUMEN ACTUAL:\n" + currentSummary + "\n\nCAMBIOS:\n" + changesDigest)
+                .system(promptHistoryMerge)
+                .call()
+                .content();
     }
 
-    private Bundle getTreatments(String patientId, String fromDateStr, String toDateStr) {
-        return fhirClient.search()
-                .forResource(Procedure.class)
-                .where(Procedure.PATIENT.hasId(patientId))
-                .and(Procedure.DATE.afterOrEquals().day(fromDateStr))
-                .and(Procedure.DATE.beforeOrEquals().day(toDateStr))
-                .returnBundle(Bundle.class)
-                .execute();
+    /**
+     * Sustituye los fragmentos del historial del paciente por los del nuevo resumen y guarda su estado.
+     * Todo ocurre en una transacción: si algo falla se conservan el resumen y la marca anteriores.
+     * Si otro proceso actualizó el estado entretanto, la versión no coincide y el evento se reintenta.
+     */
+    private void replaceInVectorStore(PatientHistoryStateEntity state) {
+        String patientId = state.getPatientId();
+        List<Document> documents = List.of(
+                Document.builder()
+                        .text(state.getSummary())
+                        .metadata(Map.of("patient_id", patientId, "category", HISTORY_CATEGORY))
+                        .build()
+        );
+
+        // Se guarda la posición de cada fragmento para devolverlos en orden
+        List<Document> splitChunks = documentTransformer.apply(documents);
+        List<Document> chunks = new ArrayList<>(splitChunks.size());
+        for (int i = 0; i < splitChunks.size(); i++) {
+            Document chunk = splitChunks.get(i);
+            Map<String, Object> metadata = new HashMap<>(chunk.getMetadata());
+            metadata.put(VectorStoreDocumentRepository.CHUNK_INDEX, i);
+            chunks.add(Document.builder()
+                    .id(chunk.getId())
+                    .text(chunk.getText())
+                    .metadata(metadata)
+                    .build());
+        }
+        log.info("Guardando el resumen del historial del paciente {} en el VectorStore", patientId);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            vectorStore.delete("patient_id == '" + patientId + "' && category == '" + HISTORY_CATEGORY + "'");
+            vectorStore.add(chunks);
+            patientHistoryStateRepository.save(state);
+        });
     }
 
-    private Bundle combineBundles(Bundle conditions, Bundle procedures, Bundle treatments, Patient patient) {
-        Bundle combined = new Bundle();
-        combined.setType(Bundle.BundleType.COLLECTION);
-        combined.addEntry().setResource(patient);
+    /**
+     * El resumen se regenera cada full-rebuild-days o cuando la ventana de fechas deja atrás su recurso más antiguo
+     * (una fusión no puede quitar lo que ya no está en la ventana)
+     */
+    private boolean needsFullRebuild(PatientHistoryStateEntity state, LocalDate fromDate) {
+        return state.getRebuiltAt().isBefore(LocalDateTime.now().minusDays(fullRebuildDays))
+                || (state.getOldestItem() != null && state.getOldestItem().isBefore(fromDate));
+    }
 
-        if (conditions != null) {
-            combined.getEntry().addAll(conditions.getEntry());
-        }
-        if (procedures != null) {
-            combined.getEntry().addAll(procedures.getEntry());
-        }
-        if (treatments != null) {
-            combined.getEntry().addAll(treatments.getEntry());
-        }
+    /**
+     * Fecha más antigua de los recursos que se filtran por la ventana de fechas (las condiciones no se filtran)
+     */
+    private Optional<LocalDate> oldestItem(Bundle bundle) {
+        return bundle.getEntry().stream()
+                .map(Bundle.BundleEntryComponent::getResource)
+                .map(resource -> switch (resource) {
+                    case Procedure procedure -> procedure.hasPerformedDateTimeType()
+                            ? procedure.getPerformedDateTimeType().getValue()
+                            : procedure.hasPerformedPeriod() ? procedure.getPerformedPeriod().getStart() : null;
+                    case MedicationRequest medicationRequest -> medicationRequest.getAuthoredOn();
+                    default -> null;
+                })
+                .filter(Objects::nonNull)
+                .min(Comparator.naturalOrder())
+                .map(date -> LocalDate.ofInstant(date.toInstant(), ZoneId.systemDefault()));
+    }
 
-        return combined;
+    private Optional<LocalDateTime> latestUpdate(Bundle bundle) {
+        return bundle.getEntry().stream()
+                .map(entry -> entry.getResource().getMeta().getLastUpdated())
+                .filter(Objects::nonNull)
+                .max(Comparator.naturalOrder())
+                .map(lastUpdated -> LocalDateTime.ofInstant(lastUpdated.toInstant(), ZoneId.systemDefault()));
     }
 
-    private String createHistorySummary(String historyJson) {
-        return chatClient.prompt(historyJson)
-                .system(promptHistorySummary)
-                .call()
-                .content();
+    /**
+     * Versiones cuyo lastUpdated cae en el margen de la nueva marca: la próxima consulta las volverá a recibir
+     */
+    private String nextBoundary(Set<String> previous, Bundle bundle, LocalDateTime watermark) {
+        long boundaryStart = toDate(watermark.minusSeconds(WATERMARK_OVERLAP_SECONDS)).getTime();
+
+        Set<String> versions = new TreeSet<>(previous);
+        bundle.getEntry().stream()
+                .filter(entry -> entry.getResource().getMeta().getLastUpdated() != null)
+                .forEach(entry -> versions.add(versionKey(entry)));
+        versions.removeIf(version -> Long.parseLong(version.substring(version.lastIndexOf('@') + 1)) < boundaryStart);
+
+        return String.join(",", versions);
     }
 
-    private void saveToVectorStore(String historySummary, String patientId) {
-        List<Document> documents = List.of(
-                Document.builder()
-                        .text(historySummary)
-                        .metadata(Map.of("patient_id", patientId, "category", "patient_history"))
-                        .build()
-        );
+    private Set<String> parseBoundary(String boundaryVersions) {
+        return boundaryVersions == null || boundaryVersions.isBlank()
+                ? Set.of()
+                : new HashSet<>(Arrays.asList(boundaryVersions.split(",")));
+    }
 
-        List<Document> chunks = documentTransformer.apply(documents);
-        log.info("Guardando el resumen del historial del paciente {} en el VectorStore", patientId);
+    private String versionKey(Bundle.BundleEntryComponent entry) {
+        return entry.getResource().getIdElement().toUnqualified().getValue()
+                + "@" + entry.getResource().getMeta().getLastUpdated().getTime();
+    }
 
-        vectorStore.add(chunks);
+    private Date toDate(LocalDateTime dateTime) {
+        return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
     }
 }
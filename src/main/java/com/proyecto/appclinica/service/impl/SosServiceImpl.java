@@ -12,14 +12,15 @@ import com.proyecto.appclinica.model.entity.UserSettings;
 import com.proyecto.appclinica.repository.PatientRepository;
 import com.proyecto.appclinica.repository.SosRepository;
 import com.proyecto.appclinica.repository.UserSettingsRepository;
+import com.proyecto.appclinica.service.OutboxService;
 import com.proyecto.appclinica.service.SosService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -32,7 +33,8 @@ public class SosServiceImpl implements SosService {
     private final ChatClient chatClient;
     private final SosRepository sosRepository;
     private final UserSettingsRepository userSettingsRepository;
-    private final ApplicationEventPublisher eventPublisher;
+    private final OutboxService outboxService;
+    private final TransactionTemplate transactionTemplate;
 
     public SosServiceImpl(PatientRepository patientRepository,
                           // Uso de @Lazy para evitar problemas de dependencia circular al diferir
@@ -41,12 +43,14 @@ public class SosServiceImpl implements SosService {
                           @Lazy @Qualifier("sosChatClient") ChatClient chatClient,
                           SosRepository sosRepository,
                           UserSettingsRepository userSettingsRepository,
-                          ApplicationEventPublisher eventPublisher) {
+                          OutboxService outboxService,
+                          TransactionTemplate transactionTemplate) {
         this.patientRepository = patientRepository;
         this.chatClient = chatClient;
         this.sosRepository = sosRepository;
         this.userSettingsRepository = userSettingsRepository;
-        this.eventPublisher = eventPublisher;
+        this.outboxService = outboxService;
+        this.transactionTemplate = transactionTemplate;
     }
 
     @Override
@@ -68,16 +72,17 @@ public class SosServiceImpl implements SosService {
                 .status(ESosStatus.PENDING) // Estado inicial por defecto
                 .build();
 
-        SosEntity savedSos = sosRepository.save(newSos);
+        // El SOS y su evento de alerta se guardan juntos: si se confirma el SOS, la alerta se envía
+        SosEntity savedSos = transactionTemplate.execute(status -> {
+            SosEntity sos = sosRepository.save(newSos);
 
-        UserSettings userSettings = userSettingsRepository.findByPatientId(patient.getPatientId())
-                .orElseThrow(() -> new ResourceNotFoundException("Configuración de usuario no encontrada para el paciente con ID: " + patient.getPatientId()));
+            UserSettings userSettings = userSettingsRepository.findByPatientId(patient.getPatientId())
+                    .orElseThrow(() -> new ResourceNotFoundException("Configuración de usuario no encontrada para el paciente con ID: " + patient.getPatientId()));
 
-        // Forzar la carga de emergencyContacts mientras aún estás en la sesión activa
-        userSettings.getEmergencyContacts().size(); // O usar Hibernate.initialize(userSettings.getEmergencyContacts())
-
-        // Publicar evento para notificar a los contactos de emergencia
-        eventPublisher.publishEvent(new AlertSosCreateEvent(patient, savedSos, userSettings));
+            // Publicar evento para notificar a los contactos de emergencia
+            outboxService.publish(new AlertSosCreateEvent(patient, sos, userSettings));
+            return sos;
+        });
 
         return buildSosResponse(savedSos);
     }
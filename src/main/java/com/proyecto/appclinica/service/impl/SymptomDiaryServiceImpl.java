@@ -8,6 +8,7 @@ import com.proyecto.appclinica.model.dto.symptom.SymptomDto;
 import com.proyecto.appclinica.model.dto.symptom.SymptomRecordDto;
 import com.proyecto.appclinica.repository.FhirObservationRepository;
 import com.proyecto.appclinica.service.SymptomDiaryService;
+import com.proyecto.appclinica.service.SymptomProjectionService;
 import com.proyecto.appclinica.util.IntensityCode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -28,6 +29,8 @@ import java.util.Map;
 public class SymptomDiaryServiceImpl implements SymptomDiaryService {
 
     private final FhirObservationRepository observationRepository;
+    // Las lecturas del diario se sirven desde la copia local; las escrituras la mantienen al día
+    private final SymptomProjectionService symptomProjectionService;
 
     // URLs para extensiones personalizadas
     private static final String DURATION_URL = "http://example.org/fhir/StructureDefinition/duration";
@@ -38,7 +41,10 @@ public class SymptomDiaryServiceImpl implements SymptomDiaryService {
         Observation observation = buildBaseObservation(dto);
         addSymptomComponent(observation, dto);
 
-        return observationRepository.createObservation(observation);
+        Observation created = observationRepository.createObservation(observation);
+        symptomProjectionService.project(created);
+
+        return observationRepository.convertObservationToSymptomRecord(created);
     }
 
     @Override
@@ -60,7 +66,10 @@ public class SymptomDiaryServiceImpl implements SymptomDiaryService {
         addSymptomComponent(observation, dto);
 
         // Guardar cambios
-        return observationRepository.updateObservation(observation);
+        Observation updated = observationRepository.updateObservation(observation);
+        symptomProjectionService.project(updated);
+
+        return observationRepository.convertObservationToSymptomRecord(updated);
     }
 
     @Override
@@ -69,7 +78,7 @@ public class SymptomDiaryServiceImpl implements SymptomDiaryService {
             throw new InvalidRequestException("El ID del paciente no puede estar vacío o nulo.");
         }
 
-        return observationRepository.findSymptomObservationsByPatient(patientId);
+        return symptomProjectionService.findByPatient(patientId);
     }
 
     @Override
@@ -78,7 +87,7 @@ public class SymptomDiaryServiceImpl implements SymptomDiaryService {
             throw new InvalidRequestException("El ID del paciente no puede estar vacío o nulo.");
         }
 
-        return observationRepository.findSymptomObservationsByPatientAndDateRange(patientId, startDate, endDate);
+        return symptomProjectionService.findByPatientAndDateRange(patientId, startDate, endDate);
     }
 
     @Override
@@ -87,7 +96,8 @@ public class SymptomDiaryServiceImpl implements SymptomDiaryService {
             throw new InvalidRequestException("El ID del paciente no puede estar vacío o nulo.");
         }
 
-        return observationRepository.getTodaySymptomsByPatient(patientId);
+        LocalDate today = LocalDate.now();
+        return symptomProjectionService.findByPatientAndDateRange(patientId, today, today);
     }
 
     @Override
@@ -100,6 +110,7 @@ public class SymptomDiaryServiceImpl implements SymptomDiaryService {
     public void deleteSymptomDiary(String observationId) {
         observationRepository.getObservationById(observationId); // Verifica que exista
         observationRepository.deleteObservation(observationId);
+        symptomProjectionService.remove(observationId);
     }
 
     @Override
@@ -108,7 +119,8 @@ public class SymptomDiaryServiceImpl implements SymptomDiaryService {
             throw new InvalidRequestException("El ID del paciente no puede estar vacío o nulo.");
         }
 
-        return observationRepository.getTodayRegisteredSymptomsByPatient(patientId);
+        LocalDate today = LocalDate.now();
+        return symptomProjectionService.findByPatientAndRegistrationDateRange(patientId, today, today);
     }
 
     @Override
@@ -117,7 +129,7 @@ public class SymptomDiaryServiceImpl implements SymptomDiaryService {
             throw new InvalidRequestException("El ID del paciente no puede estar vacío o nulo.");
         }
 
-        return observationRepository.findSymptomObservationsByPatientAndRegistrationDateRange(patientId, startDate, endDate);
+        return symptomProjectionService.findByPatientAndRegistrationDateRange(patientId, startDate, endDate);
     }
 
 
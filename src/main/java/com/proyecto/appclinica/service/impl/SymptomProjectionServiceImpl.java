@@ -0,0 +1,154 @@
+package com.proyecto.appclinica.service.impl;
+
+import com.proyecto.appclinica.model.dto.symptom.SymptomRecordDto;
+import com.proyecto.appclinica.model.entity.SymptomObservationEntity;
+import com.proyecto.appclinica.repository.FhirObservationRepository;
+import com.proyecto.appclinica.repository.SymptomObservationRepository;
+import com.proyecto.appclinica.service.SymptomProjectionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.r4.model.BaseDateTimeType;
+import org.hl7.fhir.r4.model.Observation;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SymptomProjectionServiceImpl implements SymptomProjectionService {
+
+    private static final String WATERMARK = "symptom_observations";
+    private static final DateTimeFormatter DISPLAY_DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final int RECONCILE_BATCH_SIZE = 200;
+    // Margen al reanudar: cubre relojes desfasados y varias escrituras en el mismo instante
+    private static final long WATERMARK_OVERLAP_SECONDS = 5;
+
+    private final SymptomObservationRepository symptomObservationRepository;
+    private final FhirObservationRepository fhirObservationRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Override
+    @Transactional
+    public void project(Observation observation) {
+        upsert(toEntity(observation));
+    }
+
+    @Override
+    @Transactional
+    public void remove(String observationId) {
+        symptomObservationRepository.deleteById(observationId);
+    }
+
+    @Override
+    public void reconcile() {
+        Date since = symptomObservationRepository.findWatermark(WATERMARK)
+                .map(watermark -> Timestamp.valueOf(watermark.minusSeconds(WATERMARK_OVERLAP_SECONDS)))
+                .orElse(null);
+
+        int reconciled = 0;
+        try (Stream<Observation> observations = fhirObservationRepository.streamSymptomObservationsUpdatedSince(since)) {
+            Iterator<Observation> iterator = observations.iterator();
+            List<SymptomObservationEntity> batch = new ArrayList<>(RECONCILE_BATCH_SIZE);
+
+            while (iterator.hasNext()) {
+                batch.add(toEntity(iterator.next()));
+                if (batch.size() == RECONCILE_BATCH_SIZE || !iterator.hasNext()) {
+                    saveBatch(batch);
+                    reconciled += batch.size();
+                    batch.clear();
+                }
+            }
+        }
+
+        if (reconciled > 0) {
+            log.info("Proyección de síntomas reconciliada: {} observaciones actualizadas desde {}", reconciled, since);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<SymptomRecordDto> findByPatient(String patientId) {
+        return toDtos(symptomObservationRepository.findByPatientIdOrderByEffectiveAt(patientId));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<SymptomRecordDto> findByPatientAndDateRange(String patientId, LocalDate startDate, LocalDate endDate) {
+        return toDtos(symptomObservationRepository.findByPatientIdAndEffectiveAtBetweenOrderByEffectiveAt(
+                patientId, startDate.atStartOfDay(), endDate.atTime(LocalTime.MAX)));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<SymptomRecordDto> findByPatientAndRegistrationDateRange(String patientId, LocalDate startDate, LocalDate endDate) {
+        return toDtos(symptomObservationRepository.findByPatientIdAndLastUpdatedBetweenOrderByLastUpdated(
+                patientId, startDate.atStartOfDay(), endDate.atTime(LocalTime.MAX)));
+    }
+
+    /**
+     * Guarda un lote de la reconciliación y avanza la marca hasta la última modificación del lote
+     * (los resultados llegan ordenados por _lastUpdated)
+     */
+    private void saveBatch(List<SymptomObservationEntity> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            batch.forEach(this::upsert);
+            symptomObservationRepository.saveWatermark(WATERMARK, batch.getLast().getLastUpdated());
+        });
+    }
+
+    private void upsert(SymptomObservationEntity entity) {
+        symptomObservationRepository.upsert(entity.getObservationId(), entity.getPatientId(), entity.getEffectiveAt(),
+                entity.getSymptom(), entity.getIntensity(), entity.getNotes(), entity.getLastUpdated());
+    }
+
+    private SymptomObservationEntity toEntity(Observation observation) {
+        // Nombre, intensidad y notas se extraen igual que al leer de FHIR
+        SymptomRecordDto record = fhirObservationRepository.convertObservationToSymptomRecord(observation);
+
+        LocalDateTime effectiveAt = observation.getEffective() instanceof BaseDateTimeType effective
+                && effective.getValue() != null ? toLocalDateTime(effective.getValue()) : null;
+        Date lastUpdated = observation.getMeta().getLastUpdated();
+
+        return SymptomObservationEntity.builder()
+                .observationId(observation.getIdElement().getIdPart())
+                .patientId(observation.getSubject().getReferenceElement().getIdPart())
+                .effectiveAt(effectiveAt)
+                .symptom(record.getSymptom())
+                .intensity(record.getIntensity())
+                .notes(record.getNotes())
+                .lastUpdated(lastUpdated != null ? toLocalDateTime(lastUpdated) : LocalDateTime.now())
+                .build();
+    }
+
+    private List<SymptomRecordDto> toDtos(List<SymptomObservationEntity> entities) {
+        return entities.stream()
+                .map(entity -> {
+                    SymptomRecordDto dto = new SymptomRecordDto();
+                    dto.setId(entity.getObservationId());
+                    dto.setDate((entity.getEffectiveAt() != null ? entity.getEffectiveAt().toLocalDate() : LocalDate.now())
+                            .format(DISPLAY_DATE_FORMAT));
+                    dto.setSymptom(entity.getSymptom());
+                    dto.setIntensity(entity.getIntensity());
+                    dto.setNotes(entity.getNotes());
+                    return dto;
+                })
+                .toList();
+    }
+
+    private LocalDateTime toLocalDateTime(Date date) {
+        return LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+    }
+}
@@ -4,19 +4,19 @@ import ca.uhn.fhir.context.FhirContext;
 import com.proyecto.appclinica.constant.MedicationCodingSystems;
 import com.proyecto.appclinica.constant.TreatmentExtensionConstants;
 import com.proyecto.appclinica.event.medication.MedicationRequestCreatedEvent;
+import com.proyecto.appclinica.event.medication.MedicationRequestUpdatedEvent;
 import com.proyecto.appclinica.model.dto.treatment.CreateTreatmentDto;
 import com.proyecto.appclinica.model.dto.treatment.TreatmentRecordDto;
 import com.proyecto.appclinica.model.dto.treatment.TreatmentResultDto;
 import com.proyecto.appclinica.repository.FhirMedicationRequestRepository;
 import com.proyecto.appclinica.repository.FhirPatientRepository;
-import com.proyecto.appclinica.repository.MedicationRepository;
+import com.proyecto.appclinica.service.OutboxService;
 import com.proyecto.appclinica.service.TreatmentService;
 import com.proyecto.appclinica.util.PatientUtils;
 import com.proyecto.appclinica.util.PeriodUnitMapper;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.hl7.fhir.r4.model.*;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.text.Normalizer;
@@ -31,8 +31,7 @@ import java.util.List;
 public class TreatmentServiceImpl implements TreatmentService {
     private final FhirMedicationRequestRepository fhirMedicationRequestRepository;
     private final FhirPatientRepository fhirPatientRepository;
-    private final MedicationRepository medicationRepository;
-    private final ApplicationEventPublisher publisher;
+    private final OutboxService outboxService;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
 
@@ -74,15 +73,12 @@ public class TreatmentServiceImpl implements TreatmentService {
         MedicationRequest resultRequest = fhirMedicationRequestRepository.saveMedicationRequest(request);
 
         // Publicamos el evento después de guardar el tratamiento
-        publisher.publishEvent(new MedicationRequestCreatedEvent(resultRequest));
+        outboxService.publish(new MedicationRequestCreatedEvent(resultRequest));
 
         return convertToTreatmentRecordDto(resultRequest);
     }
 
     public TreatmentRecordDto updateTreatment(String medicationRequestId, CreateTreatmentDto treatmentDTO) {
-        // Eliminar todas las MedicationEntity existentes que hacen referencia a este MedicationRequest
-        medicationRepository.deleteAll(medicationRepository.findByMedicationRequestId(medicationRequestId));
-
         MedicationRequest existingRequest = fhirMedicationRequestRepository.getMedicationRequestById(medicationRequestId);
 
         // Actualizar los campos necesarios si no son nulos
@@ -120,8 +116,8 @@ public class TreatmentServiceImpl implements TreatmentService {
         // Guardar la solicitud actualizada en el repositorio
         MedicationRequest updatedRequest = fhirMedicationRequestRepository.updateMedicationRequest(existingRequest);
 
-        // Lanzar el mismo evento que se envía en createTreatment para recrear las entidades MedicationEntity
-        publisher.publishEvent(new MedicationRequestCreatedEvent(updatedRequest));
+        // Ajustar las dosis futuras a la nueva pauta conservando las dosis pasadas y ya registradas
+        outboxService.publish(new MedicationRequestUpdatedEvent(updatedRequest));
 
         return convertToTreatmentRecordDto(updatedRequest);
     }
@@ -1,7 +1,12 @@
 package com.proyecto.appclinica.tool;
 
 import com.proyecto.appclinica.exception.InvalidRequestException;
+import com.proyecto.appclinica.exception.StatusException;
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationAdherenceDto;
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationPageDto;
 import com.proyecto.appclinica.model.dto.treatment.medication.MedicationResponseDto;
+import com.proyecto.appclinica.model.entity.EMedicationStatementStatus;
+import com.proyecto.appclinica.service.MedicationAdherenceService;
 import com.proyecto.appclinica.service.MedicationService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.ai.tool.annotation.Tool;
@@ -14,7 +19,11 @@ import java.util.List;
 @Component
 @RequiredArgsConstructor
 public class MedicationTool {
+    // Dosis por página que se devuelven al modelo en las consultas por rango
+    private static final int PAGE_SIZE = 50;
+
     private final MedicationService medicationService;
+    private final MedicationAdherenceService medicationAdherenceService;
 
     @Tool(name = "get_medications_today", description = "Recuperar los medicamentos de hoy para una paciente")
     public List<MedicationResponseDto> getMedicationsToday(
@@ -40,11 +49,13 @@ public class MedicationTool {
         return medicationService.getMedicationsByDate(patientId, LocalDate.parse(date));
     }
 
-    @Tool(name = "get_medications_in_date_range", description = "Recuperar los medicamentos de una paciente en un rango de fechas")
-    public List<MedicationResponseDto> getMedicationsInDateRange(
+    @Tool(name = "get_medications_in_date_range", description = "Recuperar los medicamentos de una paciente en un rango de fechas, " +
+            "por páginas de " + PAGE_SIZE + ". Si la respuesta trae nextCursor y se necesitan más datos, volver a llamar con ese cursor")
+    public MedicationPageDto getMedicationsInDateRange(
             @ToolParam(description = "ID del paciente") String patientId,
             @ToolParam(description = "Fecha de inicio en formato ISO 8601") String startDate,
-            @ToolParam(description = "Fecha de fin en formato ISO 8601") String endDate
+            @ToolParam(description = "Fecha de fin en formato ISO 8601") String endDate,
+            @ToolParam(description = "Cursor nextCursor de la página anterior; vacío para la primera página", required = false) String cursor
     ) {
         if (patientId == null || patientId.isEmpty()) {
             throw new InvalidRequestException("El identificador del paciente no puede ser nulo o vacío.");
@@ -52,15 +63,18 @@ public class MedicationTool {
         if (startDate == null || startDate.isEmpty() || endDate == null || endDate.isEmpty()) {
             throw new InvalidRequestException("Las fechas de inicio y fin no pueden ser nulas o vacías.");
         }
-        return medicationService.getMedicationsInDateRange(patientId, LocalDate.parse(startDate), LocalDate.parse(endDate));
+        return medicationService.getMedicationsPage(patientId, LocalDate.parse(startDate), LocalDate.parse(endDate),
+                null, cursor == null || cursor.isEmpty() ? null : cursor, PAGE_SIZE);
     }
 
-    @Tool(name = "get_medications_by_date_range_and_status", description = "Recuperar los medicamentos de una paciente en un rango de fechas y estado específico")
-    public List<MedicationResponseDto> getMedicationsByDateRangeAndStatus(
+    @Tool(name = "get_medications_by_date_range_and_status", description = "Recuperar los medicamentos de una paciente en un rango de fechas " +
+            "y estado específico, por páginas de " + PAGE_SIZE + ". Si la respuesta trae nextCursor y se necesitan más datos, volver a llamar con ese cursor")
+    public MedicationPageDto getMedicationsByDateRangeAndStatus(
             @ToolParam(description = "ID del paciente") String patientId,
             @ToolParam(description = "Fecha de inicio en formato ISO 8601") String startDate,
             @ToolParam(description = "Fecha de fin en formato ISO 8601") String endDate,
-            @ToolParam(description = "Estado del medicamento") String status
+            @ToolParam(description = "Estado del medicamento") String status,
+            @ToolParam(description = "Cursor nextCursor de la página anterior; vacío para la primera página", required = false) String cursor
     ) {
         if (patientId == null || patientId.isEmpty()) {
             throw new InvalidRequestException("ID del paciente no puede ser nulo o vacío.");
@@ -68,6 +82,30 @@ public class MedicationTool {
         if (startDate == null || startDate.isEmpty() || endDate == null || endDate.isEmpty()) {
             throw new InvalidRequestException("Las fechas de inicio y fin no pueden ser nulas o vacías.");
         }
-        return medicationService.getMedicationsByDateRangeAndStatus(patientId, LocalDate.parse(startDate), LocalDate.parse(endDate), status);
+
+        EMedicationStatementStatus medicationStatus;
+        try {
+            medicationStatus = EMedicationStatementStatus.valueOf(status);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new StatusException("Estado de medicamento no válido: " + status);
+        }
+        return medicationService.getMedicationsPage(patientId, LocalDate.parse(startDate), LocalDate.parse(endDate),
+                medicationStatus, cursor == null || cursor.isEmpty() ? null : cursor, PAGE_SIZE);
+    }
+
+    @Tool(name = "get_medication_adherence", description = "Recuperar la adherencia al tratamiento de una paciente en un rango de fechas: " +
+            "dosis completadas, no tomadas y pendientes por día, y el porcentaje de adherencia")
+    public MedicationAdherenceDto getMedicationAdherence(
+            @ToolParam(description = "ID del paciente") String patientId,
+            @ToolParam(description = "Fecha de inicio en formato ISO 8601") String startDate,
+            @ToolParam(description = "Fecha de fin en formato ISO 8601") String endDate
+    ) {
+        if (patientId == null || patientId.isEmpty()) {
+            throw new InvalidRequestException("El ID del paciente no puede ser nulo o vacío.");
+        }
+        if (startDate == null || startDate.isEmpty() || endDate == null || endDate.isEmpty()) {
+            throw new InvalidRequestException("Las fechas de inicio y fin no pueden ser nulas o vacías.");
+        }
+        return medicationAdherenceService.getAdherence(patientId, LocalDate.parse(startDate), LocalDate.parse(endDate));
     }
 }
@@ -0,0 +1,275 @@
+package com.proyecto.appclinica.util;
+
+import org.hl7.fhir.r4.model.*;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Convierte un Bundle FHIR en un resumen clínico compacto para los prompts del modelo de chat.
+ * Solo conserva los campos clínicos relevantes (sin meta, narrativa, URLs de sistemas ni estructuras vacías),
+ * elimina las codificaciones repetidas de cada recurso y ordena las líneas por fecha para que la salida sea
+ * determinista. Cada recurso tiene su propia línea, aunque coincida con la de otro (p. ej. dos procedimientos
+ * iguales el mismo día).
+ * Con referencias, cada línea termina en "ref=Tipo/id" para identificar el recurso al fusionar versiones nuevas.
+ */
+public class FhirDigestEncoder {
+
+    private static final String SEPARATOR = " | ";
+    private static final String NO_DATE = "s/f";
+
+    // Sistemas de codificación conocidos; los códigos de otros sistemas no aportan al modelo y se omiten
+    private static final Map<String, String> SYSTEM_LABELS = Map.of(
+            "http://snomed.info/sct", "SNOMED",
+            "http://loinc.org", "LOINC",
+            "http://hl7.org/fhir/sid/icd-10", "CIE10",
+            "http://www.nlm.nih.gov/research/umls/rxnorm", "RxNorm",
+            "http://www.whocc.no/atc", "ATC"
+    );
+
+    private FhirDigestEncoder() {
+    }
+
+    public static String encode(Bundle bundle) {
+        return encode(bundle, false);
+    }
+
+    public static String encode(Bundle bundle, boolean withReferences) {
+        List<Resource> resources = bundle.getEntry().stream()
+                .map(Bundle.BundleEntryComponent::getResource)
+                .filter(Objects::nonNull)
+                .toList();
+
+        StringBuilder digest = new StringBuilder();
+        resources.stream()
+                .filter(Patient.class::isInstance)
+                .map(resource -> patientLine((Patient) resource))
+                .distinct()
+                .forEach(line -> digest.append(line).append('\n'));
+
+        appendSection(digest, "CONDICIONES", resources, Condition.class,
+                referenced(FhirDigestEncoder::conditionLine, withReferences));
+        appendSection(digest, "PROCEDIMIENTOS", resources, Procedure.class,
+                referenced(FhirDigestEncoder::procedureLine, withReferences));
+        appendSection(digest, "TRATAMIENTOS", resources, MedicationRequest.class,
+                referenced(FhirDigestEncoder::medicationRequestLine, withReferences));
+        appendSection(digest, "OBSERVACIONES", resources, Observation.class,
+                referenced(FhirDigestEncoder::observationLine, withReferences));
+
+        return digest.isEmpty() ? "Sin registros clínicos" : digest.toString().stripTrailing();
+    }
+
+    private static <T extends Resource> void appendSection(StringBuilder digest, String title, List<Resource> resources,
+                                                           Class<T> resourceType, Function<T, String> formatter) {
+        // Cada línea empieza por la fecha, así el orden alfabético es también cronológico
+        List<String> lines = resources.stream()
+                .filter(resourceType::isInstance)
+                .map(resource -> formatter.apply(resourceType.cast(resource)))
+                .sorted()
+                .toList();
+
+        if (lines.isEmpty()) {
+            return;
+        }
+
+        digest.append(title).append(":\n");
+        lines.forEach(line -> digest.append("- ").append(line).append('\n'));
+    }
+
+    private static <T extends Resource> Function<T, String> referenced(Function<T, String> formatter,
+                                                                           boolean withReferences) {
+        if (!withReferences) {
+            return formatter;
+        }
+        return resource -> join(formatter.apply(resource), resource.getIdElement().isEmpty() ? null
+                : "ref=" + resource.getIdElement().toUnqualifiedVersionless().getValue());
+    }
+
+    private static String patientLine(Patient patient) {
+        return "PACIENTE: " + join(
+                patient.hasGender() ? "sexo=" + patient.getGender().toCode() : null,
+                patient.hasBirthDate() ? "nacimiento=" + patient.getBirthDateElement().getValueAsString() : null
+        );
+    }
+
+    private static String conditionLine(Condition condition) {
+        BaseDateTimeType date = condition.hasOnsetDateTimeType() ? condition.getOnsetDateTimeType()
+                : condition.getRecordedDateElement();
+
+        return join(
+                date(date, 10),
+                concept(condition.getCode()),
+                condition.hasClinicalStatus() ? "estado=" + code(condition.getClinicalStatus()) : null,
+                condition.hasAbatementDateTimeType()
+                        ? "resuelta=" + date(condition.getAbatementDateTimeType(), 10) : null,
+                notes(condition.getNote())
+        );
+    }
+
+    private static String procedureLine(Procedure procedure) {
+        BaseDateTimeType date = procedure.hasPerformedDateTimeType() ? procedure.getPerformedDateTimeType()
+                : procedure.hasPerformedPeriod() ? procedure.getPerformedPeriod().getStartElement() : null;
+
+        return join(
+                date(date, 10),
+                concept(procedure.getCode()),
+                procedure.hasStatus() ? "estado=" + procedure.getStatus().toCode() : null
+        );
+    }
+
+    private static String medicationRequestLine(MedicationRequest medicationRequest) {
+        String medication = medicationRequest.hasMedicationCodeableConcept()
+                ? concept(medicationRequest.getMedicationCodeableConcept())
+                : medicationRequest.hasMedicationReference()
+                ? medicationRequest.getMedicationReference().getDisplay() : null;
+
+        String dosage = medicationRequest.getDosageInstruction().stream()
+                .map(FhirDigestEncoder::dosage)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.joining("; "));
+
+        // Fin de la vigencia de la prescripción: fin previsto del tratamiento
+        Period validityPeriod = medicationRequest.getDispenseRequest().getValidityPeriod();
+
+        return join(
+                date(medicationRequest.getAuthoredOnElement(), 10),
+                medication,
+                dosage,
+                validityPeriod.hasEnd() ? "fin=" + date(validityPeriod.getEndElement(), 10) : null,
+                medicationRequest.hasStatus() ? "estado=" + medicationRequest.getStatus().toCode() : null
+        );
+    }
+
+    private static String observationLine(Observation observation) {
+        BaseDateTimeType date = observation.hasEffectiveDateTimeType() ? observation.getEffectiveDateTimeType()
+                : observation.hasEffectivePeriod() ? observation.getEffectivePeriod().getStartElement() : null;
+
+        String components = observation.getComponent().stream()
+                .map(component -> join(concept(component.getCode()), value(component.getValue())))
+                .filter(component -> !component.isEmpty())
+                .collect(Collectors.joining(", "));
+
+        return join(
+                date(date, 16),
+                concept(observation.getCode()),
+                value(observation.getValue()),
+                components.isEmpty() ? null : components,
+                notes(observation.getNote())
+        );
+    }
+
+    /**
+     * Texto de las notas (sin autor)
+     */
+    private static String notes(List<Annotation> annotations) {
+        String notes = annotations.stream()
+                .map(Annotation::getText)
+                .filter(text -> text != null && !text.isBlank())
+                .map(String::strip)
+                .collect(Collectors.joining(" "));
+        return notes.isEmpty() ? null : "nota=" + notes;
+    }
+
+    private static String dosage(Dosage dosage) {
+        if (dosage.hasText()) {
+            return dosage.getText().strip();
+        }
+
+        String dose = dosage.hasDoseAndRate() && dosage.getDoseAndRateFirstRep().hasDoseQuantity()
+                ? quantity(dosage.getDoseAndRateFirstRep().getDoseQuantity()) : null;
+
+        String frequency = null;
+        if (dosage.hasTiming() && dosage.getTiming().hasRepeat()) {
+            Timing.TimingRepeatComponent repeat = dosage.getTiming().getRepeat();
+            if (repeat.hasPeriod() && repeat.hasPeriodUnit()) {
+                frequency = (repeat.hasFrequency() ? repeat.getFrequency() + "x" : "") + "c/"
+                        + number(repeat.getPeriod()) + repeat.getPeriodUnit().toCode();
+            }
+        }
+
+        String result = join(dose, frequency);
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * Texto del concepto seguido de sus códigos de sistemas conocidos, sin repetir codificaciones
+     */
+    private static String concept(CodeableConcept concept) {
+        if (concept == null || concept.isEmpty()) {
+            return null;
+        }
+
+        String text = concept.hasText() ? concept.getText() : concept.getCoding().stream()
+                .filter(Coding::hasDisplay)
+                .map(Coding::getDisplay)
+                .findFirst()
+                .orElse(null);
+
+        String codes = concept.getCoding().stream()
+                .filter(coding -> coding.hasCode() && SYSTEM_LABELS.containsKey(coding.getSystem()))
+                .map(coding -> SYSTEM_LABELS.get(coding.getSystem()) + ":" + coding.getCode())
+                .distinct()
+                .collect(Collectors.joining(","));
+
+        if (text == null) {
+            return codes.isEmpty() ? code(concept) : codes;
+        }
+        return codes.isEmpty() ? text : text + " [" + codes + "]";
+    }
+
+    private static String code(CodeableConcept concept) {
+        return concept.getCoding().stream()
+                .filter(Coding::hasCode)
+                .map(Coding::getCode)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static String value(Type value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        if (value instanceof Quantity quantity) {
+            return quantity(quantity);
+        }
+        if (value instanceof CodeableConcept concept) {
+            return concept(concept);
+        }
+        return value.primitiveValue();
+    }
+
+    private static String quantity(Quantity quantity) {
+        if (!quantity.hasValue()) {
+            return null;
+        }
+        String unit = quantity.hasUnit() ? quantity.getUnit() : quantity.getCode();
+        return unit == null ? number(quantity.getValue()) : number(quantity.getValue()) + " " + unit;
+    }
+
+    private static String number(BigDecimal value) {
+        return value.stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Fecha ISO recortada a los primeros caracteres (10 = día, 16 = día y hora)
+     */
+    private static String date(BaseDateTimeType date, int length) {
+        if (date == null || !date.hasValue()) {
+            return NO_DATE;
+        }
+        String value = date.getValueAsString();
+        return value.length() > length ? value.substring(0, length) : value;
+    }
+
+    private static String join(String... parts) {
+        return Arrays.stream(parts)
+                .filter(part -> part != null && !part.isBlank())
+                .collect(Collectors.joining(SEPARATOR));
+    }
+}
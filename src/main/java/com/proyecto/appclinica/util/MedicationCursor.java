@@ -0,0 +1,91 @@
+package com.proyecto.appclinica.util;
+
+import com.proyecto.appclinica.exception.InvalidRequestException;
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationDoseView;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Cursor opaco de paginación por clave (keyset) sobre (time_of_taking, id): la siguiente página empieza
+ * justo después de la última dosis devuelta, sin OFFSET.
+ * <p>
+ * También guarda los MedicationRequest ya devueltos a la hora del cursor: una dosis calculada (ID negativo) que se
+ * materializa entre dos peticiones vuelve con un ID positivo, y así no se repite en la página siguiente.
+ */
+public record MedicationCursor(LocalDateTime timeOfTaking, long id, Set<String> medicationRequestIds) {
+
+    private static final String SEPARATOR = "_";
+    private static final String REQUEST_SEPARATOR = ",";
+
+    public MedicationCursor(LocalDateTime timeOfTaking, long id) {
+        this(timeOfTaking, id, Set.of());
+    }
+
+    public MedicationCursor {
+        medicationRequestIds = Set.copyOf(medicationRequestIds);
+    }
+
+    /**
+     * Cursor tras la última dosis de la página; conserva los MedicationRequest del cursor anterior si la página
+     * termina a su misma hora
+     */
+    public static MedicationCursor after(List<MedicationDoseView> page, MedicationCursor previous) {
+        MedicationDoseView last = page.get(page.size() - 1);
+        LocalDateTime time = last.timeOfTaking().toLocalDateTime();
+
+        Set<String> medicationRequestIds = new TreeSet<>();
+        if (time.equals(previous.timeOfTaking())) {
+            medicationRequestIds.addAll(previous.medicationRequestIds());
+        }
+        page.stream()
+                .filter(dose -> dose.medicationRequestId() != null && dose.timeOfTaking().toLocalDateTime().equals(time))
+                .forEach(dose -> medicationRequestIds.add(dose.medicationRequestId()));
+
+        return new MedicationCursor(time, last.id(), medicationRequestIds);
+    }
+
+    public static MedicationCursor decode(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            // Los cursores anteriores solo tienen hora e ID
+            String[] parts = value.split(SEPARATOR, 3);
+            Set<String> medicationRequestIds = parts.length < 3 || parts[2].isEmpty()
+                    ? Set.of()
+                    : Set.of(parts[2].split(REQUEST_SEPARATOR));
+            return new MedicationCursor(
+                    LocalDateTime.parse(parts[0]),
+                    Long.parseLong(parts[1]),
+                    medicationRequestIds);
+        } catch (RuntimeException e) {
+            throw new InvalidRequestException("Cursor de paginación no válido: " + cursor, e);
+        }
+    }
+
+    public String encode() {
+        String[] requests = medicationRequestIds.toArray(String[]::new);
+        Arrays.sort(requests);
+        String value = timeOfTaking + SEPARATOR + id + SEPARATOR + String.join(REQUEST_SEPARATOR, requests);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Timestamp timestamp() {
+        return Timestamp.valueOf(timeOfTaking);
+    }
+
+    /**
+     * Indica si la dosis va después del cursor en el orden (time_of_taking, id) y no se devolvió ya
+     * a esa misma hora con otro ID
+     */
+    public boolean isBefore(MedicationDoseView dose) {
+        int byTime = dose.timeOfTaking().toLocalDateTime().compareTo(timeOfTaking);
+        return byTime > 0 || (byTime == 0 && dose.id() > id
+                && (dose.medicationRequestId() == null || !medicationRequestIds.contains(dose.medicationRequestId())));
+    }
+}
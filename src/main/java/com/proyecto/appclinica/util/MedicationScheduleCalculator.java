@@ -0,0 +1,316 @@
+package com.proyecto.appclinica.util;
+
+import com.proyecto.appclinica.constant.FhirConstants;
+import com.proyecto.appclinica.model.entity.EDayTimePattern;
+import com.proyecto.appclinica.model.entity.EMedicationScheduleType;
+import com.proyecto.appclinica.model.entity.EMedicationStatementStatus;
+import com.proyecto.appclinica.model.entity.MedicationEntity;
+import com.proyecto.appclinica.model.entity.MedicationScheduleEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.r4.model.*;
+
+import java.sql.Timestamp;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Utilidad para convertir la pauta de un MedicationRequest en dosis (MedicationEntity)
+ * para un rango de días concreto.
+ */
+@Slf4j
+public class MedicationScheduleCalculator {
+
+    private static final Pattern TIME_PATTERN = Pattern.compile("(\\d{1,2}):(\\d{2})");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
+    private MedicationScheduleCalculator() {
+        // Constructor privado para evitar instanciación
+    }
+
+    /**
+     * Extrae de un MedicationRequest todo lo necesario para generar sus dosis
+     *
+     * @param request MedicationRequest guardado en FHIR
+     * @return Pauta sin materializar (materializedUntil = día anterior al inicio)
+     */
+    public static MedicationScheduleEntity toSchedule(MedicationRequest request) {
+        // Obtener la fecha de inicio y fin de la validez del medicamento
+        Instant dateStart = request.getDispenseRequest().getValidityPeriod().getStart().toInstant();
+        Instant dateEnd = request.getDispenseRequest().getValidityPeriod().getEnd().toInstant();
+
+        LocalDateTime startDateTime = LocalDateTime.ofInstant(dateStart, ZoneId.systemDefault());
+        LocalDateTime endDateTime = LocalDateTime.ofInstant(dateEnd, ZoneId.systemDefault());
+
+        // Obtener la información de la dosis
+        Dosage dosage = request.getDosageInstructionFirstRep();
+        Quantity quantity = dosage.getDoseAndRateFirstRep().getDoseQuantity();
+
+        MedicationScheduleEntity schedule = MedicationScheduleEntity.builder()
+                .medicationRequestId(request.getIdElement().getIdPart())
+                .patientId(request.getSubject().getReference().replace("Patient/", ""))
+                .nameMedicine(request.getMedicationCodeableConcept().getText())
+                .doseValue(quantity.getValue())
+                .doseUnit(quantity.getUnit())
+                .startDateTime(startDateTime)
+                .endDateTime(endDateTime)
+                .endDate(endDateTime.toLocalDate())
+                .materializedUntil(startDateTime.toLocalDate().minusDays(1))
+                .build();
+
+        if (hasIrregularSchedule(request)) {
+            schedule.setScheduleType(EMedicationScheduleType.IRREGULAR);
+            schedule.setSchedulePattern(getExtensionString(request, FhirConstants.SCHEDULE_PATTERN_EXTENSION));
+        } else if (hasCustomTimeSchedule(request)) {
+            schedule.setScheduleType(EMedicationScheduleType.CUSTOM_TIME);
+            schedule.setSchedulePattern(getCustomTimes(request).stream()
+                    .map(time -> time.format(TIME_FORMATTER))
+                    .collect(Collectors.joining(",")));
+        } else {
+            schedule.setScheduleType(EMedicationScheduleType.REGULAR);
+            schedule.setIntervalSeconds(calculateIntervalInSeconds(dosage, startDateTime));
+        }
+
+        return schedule;
+    }
+
+    /**
+     * Genera las dosis de la pauta cuyo día está entre fromDate y toDate (ambos inclusive).
+     * Las entidades devueltas no están persistidas.
+     */
+    public static List<MedicationEntity> generateDoses(MedicationScheduleEntity schedule, LocalDate fromDate, LocalDate toDate) {
+        if (fromDate.isAfter(toDate)) {
+            return new ArrayList<>();
+        }
+
+        return switch (schedule.getScheduleType()) {
+            case REGULAR -> generateRegularDoses(schedule, fromDate, toDate);
+            case IRREGULAR -> generateIrregularDoses(schedule, fromDate, toDate);
+            case CUSTOM_TIME -> generateCustomTimeDoses(schedule, fromDate, toDate);
+        };
+    }
+
+    private static List<MedicationEntity> generateRegularDoses(MedicationScheduleEntity schedule, LocalDate fromDate, LocalDate toDate) {
+        List<MedicationEntity> medications = new ArrayList<>();
+
+        Long intervalSeconds = schedule.getIntervalSeconds();
+        if (intervalSeconds == null || intervalSeconds <= 0) {
+            log.warn("MedicationRequest {} sin frecuencia válida, no se generan dosis", schedule.getMedicationRequestId());
+            return medications;
+        }
+
+        LocalDateTime startDateTime = schedule.getStartDateTime();
+
+        // Calcular el número total de dosis basado en la duración del tratamiento
+        long totalDurationSeconds = ChronoUnit.SECONDS.between(startDateTime, schedule.getEndDateTime());
+        long totalDoses = totalDurationSeconds / intervalSeconds;
+
+        // Saltar directamente a la primera dosis del rango solicitado
+        long secondsToWindow = ChronoUnit.SECONDS.between(startDateTime, fromDate.atStartOfDay());
+        long firstDose = Math.max(0, Math.floorDiv(secondsToWindow, intervalSeconds));
+
+        for (long i = firstDose; i < totalDoses; i++) {
+            LocalDateTime doseDateTime = startDateTime.plus(intervalSeconds * i, ChronoUnit.SECONDS);
+            LocalDate doseDate = doseDateTime.toLocalDate();
+
+            if (doseDate.isAfter(toDate)) {
+                break;
+            }
+            if (doseDate.isBefore(fromDate)) {
+                continue;
+            }
+
+            MedicationEntity medication = createMedication(schedule);
+            Instant instant = doseDateTime.atZone(ZoneId.systemDefault()).toInstant();
+            medication.setTimeOfTaking(Timestamp.from(instant));
+            medication.setDate(instant.atZone(ZoneId.systemDefault()).toLocalDate());
+            medications.add(medication);
+        }
+
+        return medications;
+    }
+
+    private static List<MedicationEntity> generateIrregularDoses(MedicationScheduleEntity schedule, LocalDate fromDate, LocalDate toDate) {
+        List<MedicationEntity> medications = new ArrayList<>();
+        String patternStr = schedule.getSchedulePattern();
+        if (patternStr == null || patternStr.isEmpty()) {
+            return medications;
+        }
+
+        // Convertir los patrones de texto a EDayTimePattern
+        List<EDayTimePattern> patterns = Arrays.stream(patternStr.split(","))
+                .map(String::trim)
+                .map(EDayTimePattern::valueOf)
+                .toList();
+
+        // Para cada día dentro del rango, crear medicaciones según los patrones
+        LocalDate currentDate = maxDate(fromDate, schedule.getStartDateTime().toLocalDate());
+        LocalDate lastDate = minDate(toDate, schedule.getEndDate());
+        while (!currentDate.isAfter(lastDate)) {
+            for (EDayTimePattern pattern : patterns) {
+                MedicationEntity medication = createMedication(schedule);
+                medication.setTimeOfTaking(toTimestamp(currentDate, pattern.getDefaultTime()));
+                medication.setDate(currentDate);
+                medication.setIrregular(true);
+                medication.setSchedulePattern(pattern.name());
+                medications.add(medication);
+            }
+
+            currentDate = currentDate.plusDays(1);
+        }
+
+        return medications;
+    }
+
+    private static List<MedicationEntity> generateCustomTimeDoses(MedicationScheduleEntity schedule, LocalDate fromDate, LocalDate toDate) {
+        List<MedicationEntity> medications = new ArrayList<>();
+        String timesStr = schedule.getSchedulePattern();
+        if (timesStr == null || timesStr.isEmpty()) {
+            return medications;
+        }
+
+        List<LocalTime> customTimes = Arrays.stream(timesStr.split(","))
+                .map(String::trim)
+                .map(LocalTime::parse)
+                .toList();
+
+        // Para cada día dentro del rango, crear medicaciones según los horarios personalizados
+        LocalDate currentDate = maxDate(fromDate, schedule.getStartDateTime().toLocalDate());
+        LocalDate lastDate = minDate(toDate, schedule.getEndDate());
+        while (!currentDate.isAfter(lastDate)) {
+            for (LocalTime time : customTimes) {
+                MedicationEntity medication = createMedication(schedule);
+                medication.setTimeOfTaking(toTimestamp(currentDate, time));
+                medication.setDate(currentDate);
+                medication.setSchedulePattern(time.format(TIME_FORMATTER));
+                medications.add(medication);
+            }
+
+            currentDate = currentDate.plusDays(1);
+        }
+
+        return medications;
+    }
+
+    private static MedicationEntity createMedication(MedicationScheduleEntity schedule) {
+        MedicationEntity medication = new MedicationEntity();
+        medication.setNameMedicine(schedule.getNameMedicine());
+        medication.setDoseValue(schedule.getDoseValue());
+        medication.setDoseUnit(schedule.getDoseUnit());
+        medication.setPatientId(schedule.getPatientId());
+        medication.setMedicationRequestId(schedule.getMedicationRequestId());
+        medication.setStatus(EMedicationStatementStatus.INTENDED);
+        medication.setIrregular(schedule.getScheduleType() == EMedicationScheduleType.IRREGULAR);
+        return medication;
+    }
+
+    private static Timestamp toTimestamp(LocalDate date, LocalTime time) {
+        ZonedDateTime zonedDateTime = LocalDateTime.of(date, time).atZone(ZoneId.systemDefault());
+        return Timestamp.from(zonedDateTime.toInstant());
+    }
+
+    private static LocalDate maxDate(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDate minDate(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static boolean hasCustomTimeSchedule(MedicationRequest request) {
+        return request.getExtension().stream()
+                .anyMatch(ext -> FhirConstants.CUSTOM_TIME_EXTENSION.equals(ext.getUrl()));
+    }
+
+    private static List<LocalTime> getCustomTimes(MedicationRequest request) {
+        return request.getExtension().stream()
+                .filter(ext -> FhirConstants.CUSTOM_TIME_EXTENSION.equals(ext.getUrl()))
+                .map(ext -> ((StringType) ext.getValue()).getValue())
+                .flatMap(timeStr -> Arrays.stream(timeStr.split(",")))
+                .map(String::trim)
+                .map(MedicationScheduleCalculator::parseTime)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .toList();
+    }
+
+    private static Optional<LocalTime> parseTime(String timeStr) {
+        try {
+            // Intenta parsear formato HH:mm
+            Matcher matcher = TIME_PATTERN.matcher(timeStr);
+            if (matcher.matches()) {
+                int hour = Integer.parseInt(matcher.group(1));
+                int minute = Integer.parseInt(matcher.group(2));
+
+                // Validar que la hora sea válida
+                if (hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59) {
+                    return Optional.of(LocalTime.of(hour, minute));
+                }
+            }
+
+            // Intenta parsear como formato LocalTime estándar
+            return Optional.of(LocalTime.parse(timeStr));
+        } catch (DateTimeParseException e) {
+            // Si no se puede parsear, intenta buscar en EDayTimePattern
+            try {
+                EDayTimePattern pattern = EDayTimePattern.valueOf(timeStr.toUpperCase());
+                return Optional.of(pattern.getDefaultTime());
+            } catch (IllegalArgumentException ex) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    private static boolean hasIrregularSchedule(MedicationRequest request) {
+        Optional<Extension> irregularExt = request.getExtension().stream()
+                .filter(ext -> FhirConstants.IRREGULAR_SCHEDULE_EXTENSION.equals(ext.getUrl()))
+                .findFirst();
+
+        return irregularExt.isPresent() &&
+                irregularExt.get().getValue() instanceof BooleanType booleanType &&
+                booleanType.booleanValue();
+    }
+
+    private static String getExtensionString(MedicationRequest request, String url) {
+        return request.getExtension().stream()
+                .filter(ext -> url.equals(ext.getUrl()))
+                .findFirst()
+                .map(ext -> ((StringType) ext.getValue()).getValue())
+                .orElse("");
+    }
+
+    private static long calculateIntervalInSeconds(Dosage dosage, LocalDateTime startDate) {
+        // Obtener la frecuencia de la dosis
+        int frequency = dosage.getTiming().getRepeat().getFrequency();
+        if (frequency <= 0 || !dosage.getTiming().getRepeat().hasPeriodUnit()) {
+            return 0;
+        }
+
+        int periodValue = dosage.getTiming().getRepeat().getPeriod().intValue();
+        String periodUnit = dosage.getTiming().getRepeat().getPeriodUnit().toCode();
+
+        // Calcula el intervalo en segundos entre cada dosis
+        long secondsInPeriod = switch (periodUnit) {
+            case "h" -> 3600L * periodValue; // horas a segundos
+            case "d" -> 86400L * periodValue; // días a segundos
+            case "wk" -> 604800L * periodValue; // semanas a segundos
+            case "mo" -> {
+                // Cálculo preciso para meses, considerando la duración real del mes actual
+                YearMonth yearMonth = YearMonth.from(startDate);
+                yield 86400L * yearMonth.lengthOfMonth() * periodValue;
+            }
+            default -> throw new IllegalArgumentException("Unidad de periodo no soportada: " + periodUnit);
+        };
+
+        // Dividir por la frecuencia para obtener el intervalo entre dosis
+        return secondsInPeriod / frequency;
+    }
+}
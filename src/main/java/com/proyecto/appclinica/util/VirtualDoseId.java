@@ -0,0 +1,42 @@
+package com.proyecto.appclinica.util;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * ID estable de una dosis calculada (aún no materializada): el negativo de (ID de la pauta, hora de toma).
+ * Una pauta no repite hora, por lo que el par identifica la dosis y se puede resolver al actualizarla.
+ * La hora se guarda en segundos de la hora local (sin zona), en los 33 bits bajos (de 1970 a 2242);
+ * el ID de la pauta, en los 30 bits restantes (de 1 a {@link #MAX_SCHEDULE_ID}).
+ */
+public record VirtualDoseId(long scheduleId, LocalDateTime timeOfTaking) {
+
+    private static final int TIME_BITS = 33;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+
+    public static final long MAX_SCHEDULE_ID = (1L << (Long.SIZE - 1 - TIME_BITS)) - 1;
+
+    public static long encode(long scheduleId, Timestamp timeOfTaking) {
+        long seconds = timeOfTaking.toLocalDateTime().toEpochSecond(ZoneOffset.UTC);
+        if (scheduleId < 1 || scheduleId > MAX_SCHEDULE_ID || seconds < 0 || seconds > TIME_MASK) {
+            throw new IllegalArgumentException("No se puede codificar la dosis de la pauta " + scheduleId
+                    + " a las " + timeOfTaking + " como ID estable");
+        }
+        return -((scheduleId << TIME_BITS) | seconds);
+    }
+
+    public static boolean isVirtual(Long id) {
+        return id != null && id < 0;
+    }
+
+    public static VirtualDoseId decode(long id) {
+        long value = -id;
+        return new VirtualDoseId(value >>> TIME_BITS,
+                LocalDateTime.ofEpochSecond(value & TIME_MASK, 0, ZoneOffset.UTC));
+    }
+
+    public Timestamp timestamp() {
+        return Timestamp.valueOf(timeOfTaking);
+    }
+}
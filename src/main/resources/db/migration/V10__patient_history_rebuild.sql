@@ -0,0 +1,10 @@
+-- Datos para decidir cuándo el resumen del historial se reconstruye desde cero en lugar de fusionar cambios:
+-- oldest_item es la fecha clínica más antigua resumida entre los recursos filtrados por la ventana de fechas
+-- (procedimientos y tratamientos); cuando la ventana la deja atrás, el resumen contiene recursos que ya no
+-- corresponden. rebuilt_at marca la última reconstrucción completa.
+
+ALTER TABLE patient_history_state ADD COLUMN oldest_item DATE;
+ALTER TABLE patient_history_state ADD COLUMN rebuilt_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP;
+
+-- Los resúmenes existentes no llevan las referencias de los recursos: se reconstruyen en el próximo evento
+UPDATE patient_history_state SET rebuilt_at = TIMESTAMP '1970-01-01';
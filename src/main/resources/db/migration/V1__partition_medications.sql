@@ -0,0 +1,104 @@
+-- Tabla medications particionada por mes sobre time_of_taking.
+-- En bases existentes (creadas por ddl-auto) la tabla anterior se renombra, se copian sus filas y se elimina.
+
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_class c
+               JOIN pg_namespace n ON n.oid = c.relnamespace
+               WHERE c.relname = 'medications' AND c.relkind = 'r' AND n.nspname = current_schema()) THEN
+        ALTER TABLE medications RENAME TO medications_legacy;
+    END IF;
+END $$;
+
+CREATE SEQUENCE IF NOT EXISTS medications_seq START WITH 1 INCREMENT BY 50;
+
+-- La clave primaria debe incluir la clave de partición
+CREATE TABLE medications (
+    id                    BIGINT         NOT NULL,
+    name_medicine         VARCHAR(255)   NOT NULL,
+    dose_value            NUMERIC(38, 2) NOT NULL,
+    dose_unit             VARCHAR(255)   NOT NULL,
+    time_of_taking        TIMESTAMP(6)   NOT NULL,
+    date                  DATE           NOT NULL,
+    patient_id            VARCHAR(255)   NOT NULL,
+    medication_request_id VARCHAR(255),
+    status                VARCHAR(255),
+    is_irregular          BOOLEAN        NOT NULL DEFAULT FALSE,
+    schedule_pattern      VARCHAR(255),
+    CONSTRAINT pk_medications PRIMARY KEY (id, time_of_taking)
+) PARTITION BY RANGE (time_of_taking);
+
+-- Recoge filas fuera de las particiones creadas; debería permanecer vacía
+CREATE TABLE medications_default PARTITION OF medications DEFAULT;
+
+-- Crea (si no existe) la partición del mes que contiene la fecha indicada
+CREATE OR REPLACE FUNCTION create_medications_partition(month_date DATE) RETURNS BOOLEAN AS $$
+DECLARE
+    month_start DATE := date_trunc('month', month_date)::DATE;
+    partition_name TEXT := 'medications_' || to_char(month_start, 'YYYY_MM');
+BEGIN
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN FALSE;
+    END IF;
+
+    EXECUTE format('CREATE TABLE %I PARTITION OF medications FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, month_start, (month_start + INTERVAL '1 month')::DATE);
+    RETURN TRUE;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Asegura las particiones desde el mes actual hasta months_ahead meses después; devuelve cuántas creó
+CREATE OR REPLACE FUNCTION ensure_medications_partitions(months_ahead INT) RETURNS INT AS $$
+DECLARE
+    created INT := 0;
+    i INT;
+BEGIN
+    FOR i IN 0..months_ahead LOOP
+        IF create_medications_partition((date_trunc('month', CURRENT_DATE) + make_interval(months => i))::DATE) THEN
+            created := created + 1;
+        END IF;
+    END LOOP;
+    RETURN created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Particiones para el historial existente y los próximos meses, luego copia de datos
+DO $$
+DECLARE
+    first_month DATE := date_trunc('month', CURRENT_DATE)::DATE;
+    month_cursor DATE;
+BEGIN
+    IF to_regclass('medications_legacy') IS NOT NULL THEN
+        EXECUTE 'SELECT COALESCE(date_trunc(''month'', min(time_of_taking))::DATE, $1) FROM medications_legacy'
+            INTO first_month USING first_month;
+    END IF;
+
+    month_cursor := first_month;
+    WHILE month_cursor < date_trunc('month', CURRENT_DATE)::DATE LOOP
+        PERFORM create_medications_partition(month_cursor);
+        month_cursor := (month_cursor + INTERVAL '1 month')::DATE;
+    END LOOP;
+    PERFORM ensure_medications_partitions(3);
+
+    IF to_regclass('medications_legacy') IS NOT NULL THEN
+        INSERT INTO medications (id, name_medicine, dose_value, dose_unit, time_of_taking, date, patient_id,
+                                 medication_request_id, status, is_irregular, schedule_pattern)
+        SELECT id, name_medicine, dose_value, dose_unit, time_of_taking, date, patient_id,
+               medication_request_id, status, COALESCE(is_irregular, FALSE), schedule_pattern
+        FROM medications_legacy;
+
+        DROP TABLE medications_legacy;
+    END IF;
+END $$;
+
+-- La secuencia continúa por encima de los IDs copiados (Hibernate reserva bloques de 50)
+SELECT setval('medications_seq', COALESCE((SELECT max(id) FROM medications), 0) + 50);
+
+-- Consultas por paciente y rango de fechas (hoy, rangos, agenda)
+CREATE INDEX idx_medications_patient_time ON medications (patient_id, time_of_taking);
+
+-- Dosis de un tratamiento (reconciliación y temporizador de vencimientos)
+CREATE INDEX idx_medications_request_time ON medications (medication_request_id, time_of_taking);
+
+-- Barrido NOT_TAKEN, temporizador y recordatorios: solo dosis pendientes
+CREATE INDEX idx_medications_intended_time ON medications (time_of_taking) WHERE status = 'INTENDED';
@@ -0,0 +1,24 @@
+-- Resumen diario de adherencia por paciente, día y MedicationRequest.
+-- Se mantiene de forma incremental desde la aplicación; aquí solo se carga el historial existente.
+
+CREATE TABLE medication_adherence_daily (
+    patient_id            VARCHAR(255) NOT NULL,
+    day                   DATE         NOT NULL,
+    medication_request_id VARCHAR(255) NOT NULL, -- '' para dosis sin MedicationRequest
+    completed             INT          NOT NULL DEFAULT 0,
+    not_taken             INT          NOT NULL DEFAULT 0,
+    intended              INT          NOT NULL DEFAULT 0,
+    CONSTRAINT pk_medication_adherence_daily PRIMARY KEY (patient_id, day, medication_request_id)
+);
+
+CREATE INDEX idx_medication_adherence_request_day ON medication_adherence_daily (medication_request_id, day);
+
+INSERT INTO medication_adherence_daily (patient_id, day, medication_request_id, completed, not_taken, intended)
+SELECT patient_id,
+       date,
+       COALESCE(medication_request_id, ''),
+       count(*) FILTER (WHERE status = 'COMPLETED'),
+       count(*) FILTER (WHERE status = 'NOT_TAKEN'),
+       count(*) FILTER (WHERE status = 'INTENDED')
+FROM medications
+GROUP BY patient_id, date, COALESCE(medication_request_id, '');
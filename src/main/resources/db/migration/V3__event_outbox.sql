@@ -0,0 +1,17 @@
+-- Outbox de eventos de dominio: cada evento se guarda en la misma transacción que el cambio que lo origina
+-- y un despachador lo publica después (entrega al menos una vez).
+
+CREATE TABLE event_outbox (
+    id           BIGSERIAL    PRIMARY KEY,
+    event_type   VARCHAR(100) NOT NULL,
+    aggregate_id VARCHAR(255),
+    payload      TEXT         NOT NULL,
+    attempts     INT          NOT NULL DEFAULT 0,
+    available_at TIMESTAMP    NOT NULL DEFAULT now(), -- No se despacha antes (espera entre reintentos)
+    locked_until TIMESTAMP,                          -- Concesión del nodo que lo está despachando
+    last_error   TEXT,
+    created_at   TIMESTAMP    NOT NULL DEFAULT now()
+);
+
+-- Las filas despachadas se eliminan, por lo que el índice solo cubre eventos pendientes o fallidos
+CREATE INDEX idx_event_outbox_available ON event_outbox (available_at, id);
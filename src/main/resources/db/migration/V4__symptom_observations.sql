@@ -0,0 +1,21 @@
+-- Proyección local de las Observation de síntomas (code=symptom-diary) del servidor FHIR.
+-- Se actualiza con las escrituras propias y se reconcilia periódicamente por _lastUpdated.
+
+CREATE TABLE symptom_observations (
+    observation_id VARCHAR(64)  PRIMARY KEY,
+    patient_id     VARCHAR(255) NOT NULL,
+    effective_at   TIMESTAMP,             -- Cuándo ocurrió el síntoma
+    symptom        VARCHAR(255),
+    intensity      VARCHAR(255),
+    notes          TEXT,
+    last_updated   TIMESTAMP    NOT NULL  -- meta.lastUpdated en FHIR (fecha de registro)
+);
+
+CREATE INDEX idx_symptom_observations_patient_effective ON symptom_observations (patient_id, effective_at);
+CREATE INDEX idx_symptom_observations_patient_updated ON symptom_observations (patient_id, last_updated);
+
+-- Marca hasta la que cada proyección está sincronizada con FHIR
+CREATE TABLE projection_watermarks (
+    name         VARCHAR(100) PRIMARY KEY,
+    last_updated TIMESTAMP    NOT NULL
+);
@@ -0,0 +1,10 @@
+-- Resumen clínico vigente de cada paciente y marca _lastUpdated de FHIR hasta la que está resumido.
+-- Cada PatientHistoryEvent solo resume los recursos modificados desde esa marca y los fusiona con el resumen.
+
+CREATE TABLE patient_history_state (
+    patient_id   VARCHAR(255) PRIMARY KEY,
+    summary      TEXT         NOT NULL,
+    last_updated TIMESTAMP    NOT NULL, -- Mayor meta.lastUpdated de los recursos ya resumidos
+    updated_at   TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    version      BIGINT       NOT NULL DEFAULT 0
+);
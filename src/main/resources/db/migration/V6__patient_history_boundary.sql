@@ -0,0 +1,5 @@
+-- Versiones de recursos ya resumidas dentro del margen de solapamiento anterior a la marca last_updated
+-- ("Tipo/id/_history/v@epochMillis", separadas por comas). La consulta incremental vuelve a pedir ese margen
+-- para no perder escrituras que se confirmaron tarde; estas versiones se descartan para no fusionarlas dos veces.
+
+ALTER TABLE patient_history_state ADD COLUMN boundary_versions TEXT NOT NULL DEFAULT '';
@@ -0,0 +1,24 @@
+-- Todas las réplicas ejecutan ensure_medications_partitions al arrancar: la comprobación y la creación de
+-- la partición deben ser atómicas para que dos nodos que arrancan a la vez no choquen ("relation already exists").
+
+CREATE OR REPLACE FUNCTION create_medications_partition(month_date DATE) RETURNS BOOLEAN AS $$
+DECLARE
+    month_start DATE := date_trunc('month', month_date)::DATE;
+    partition_name TEXT := 'medications_' || to_char(month_start, 'YYYY_MM');
+BEGIN
+    -- Serializa la creación entre nodos; el bloqueo se libera al terminar la transacción
+    PERFORM pg_advisory_xact_lock(hashtext('medications_partitions'));
+
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN FALSE;
+    END IF;
+
+    EXECUTE format('CREATE TABLE %I PARTITION OF medications FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, month_start, (month_start + INTERVAL '1 month')::DATE);
+    RETURN TRUE;
+EXCEPTION
+    -- Creada por otra sesión que no usa el bloqueo (p. ej. a mano)
+    WHEN duplicate_table THEN
+        RETURN FALSE;
+END;
+$$ LANGUAGE plpgsql;
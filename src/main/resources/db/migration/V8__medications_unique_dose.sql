@@ -0,0 +1,40 @@
+-- Una sola dosis por MedicationRequest y hora de toma. La generación de dosis se ejecuta desde eventos del outbox
+-- (entrega al menos una vez) y los INSERT usan ON CONFLICT DO NOTHING sobre este índice.
+
+-- Duplicados previos: se conserva la dosis registrada por el paciente (o la más antigua)
+CREATE TEMP TABLE medications_duplicates ON COMMIT DROP AS
+SELECT id, time_of_taking, patient_id, date, medication_request_id
+FROM (SELECT id, time_of_taking, patient_id, date, medication_request_id,
+             row_number() OVER (PARTITION BY medication_request_id, time_of_taking
+                                ORDER BY (status = 'INTENDED'), id) AS position
+      FROM medications
+      WHERE medication_request_id IS NOT NULL) ranked
+WHERE position > 1;
+
+DELETE FROM medications m
+USING medications_duplicates d
+WHERE m.id = d.id AND m.time_of_taking = d.time_of_taking;
+
+-- Resumen de adherencia de los días afectados
+DELETE FROM medication_adherence_daily a
+USING (SELECT DISTINCT patient_id, date, medication_request_id FROM medications_duplicates) d
+WHERE a.patient_id = d.patient_id AND a.day = d.date AND a.medication_request_id = d.medication_request_id;
+
+INSERT INTO medication_adherence_daily (patient_id, day, medication_request_id, completed, not_taken, intended)
+SELECT m.patient_id,
+       m.date,
+       m.medication_request_id,
+       count(*) FILTER (WHERE m.status = 'COMPLETED'),
+       count(*) FILTER (WHERE m.status = 'NOT_TAKEN'),
+       count(*) FILTER (WHERE m.status = 'INTENDED')
+FROM medications m
+JOIN (SELECT DISTINCT patient_id, date, medication_request_id FROM medications_duplicates) d
+  ON m.patient_id = d.patient_id AND m.date = d.date AND m.medication_request_id = d.medication_request_id
+GROUP BY m.patient_id, m.date, m.medication_request_id;
+
+-- Sustituye al índice no único (mismas columnas)
+DROP INDEX IF EXISTS idx_medications_request_time;
+CREATE UNIQUE INDEX idx_medications_request_time ON medications (medication_request_id, time_of_taking);
+
+-- Eventos pendientes anteriores del mismo agregado (reclamo en orden del outbox)
+CREATE INDEX idx_event_outbox_aggregate ON event_outbox (aggregate_id, id);
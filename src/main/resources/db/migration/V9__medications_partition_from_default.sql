@@ -0,0 +1,41 @@
+-- Si medications_default ya tiene filas del mes, CREATE TABLE ... PARTITION OF falla con check_violation y
+-- ensure_medications_partitions deja de crear particiones. En ese caso la partición se crea como tabla aparte,
+-- recibe las filas del mes desde medications_default y después se adjunta (los índices se crean al adjuntarla).
+
+CREATE OR REPLACE FUNCTION create_medications_partition(month_date DATE) RETURNS BOOLEAN AS $$
+DECLARE
+    month_start DATE := date_trunc('month', month_date)::DATE;
+    month_end DATE := (date_trunc('month', month_date) + INTERVAL '1 month')::DATE;
+    partition_name TEXT := 'medications_' || to_char(month_start, 'YYYY_MM');
+    moved BIGINT;
+BEGIN
+    -- Serializa la creación entre nodos; el bloqueo se libera al terminar la transacción
+    PERFORM pg_advisory_xact_lock(hashtext('medications_partitions'));
+
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN FALSE;
+    END IF;
+
+    IF NOT EXISTS (SELECT 1 FROM medications_default
+                   WHERE time_of_taking >= month_start AND time_of_taking < month_end) THEN
+        EXECUTE format('CREATE TABLE %I PARTITION OF medications FOR VALUES FROM (%L) TO (%L)',
+                       partition_name, month_start, month_end);
+        RETURN TRUE;
+    END IF;
+
+    EXECUTE format('CREATE TABLE %I (LIKE medications INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', partition_name);
+    EXECUTE format('WITH moved AS (DELETE FROM medications_default WHERE time_of_taking >= %L AND time_of_taking < %L '
+                       || 'RETURNING *) INSERT INTO %I SELECT * FROM moved',
+                   month_start, month_end, partition_name);
+    GET DIAGNOSTICS moved = ROW_COUNT;
+    EXECUTE format('ALTER TABLE medications ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, month_start, month_end);
+
+    RAISE NOTICE 'Partición % creada con % filas movidas desde medications_default', partition_name, moved;
+    RETURN TRUE;
+EXCEPTION
+    -- Creada por otra sesión que no usa el bloqueo (p. ej. a mano)
+    WHEN duplicate_table THEN
+        RETURN FALSE;
+END;
+$$ LANGUAGE plpgsql;
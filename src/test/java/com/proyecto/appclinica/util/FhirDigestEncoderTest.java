@@ -0,0 +1,189 @@
+package com.proyecto.appclinica.util;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.proyecto.appclinica.constant.FhirConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.r4.model.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.Date;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class FhirDigestEncoderTest {
+
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+    private static final String[] SYMPTOMS = {"Dolor de cabeza", "Náuseas", "Mareo", "Fatiga"};
+    private static final String[] INTENSITIES = {"Leve", "Moderada", "Severa"};
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    static Stream<Arguments> sampleBundles() {
+        return Stream.of(
+                Arguments.of("historial crónico", chronicHistory()),
+                Arguments.of("polimedicación", polypharmacy()),
+                Arguments.of("diario de síntomas", symptomDiary())
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("sampleBundles")
+    void digestUsesFarFewerTokensThanPrettyJson(String name, Bundle bundle) {
+        String json = FHIR_CONTEXT.newJsonParser().setPrettyPrint(true).encodeResourceToString(bundle);
+        String digest = FhirDigestEncoder.encode(bundle);
+
+        int jsonTokens = tokenCountEstimator.estimate(json);
+        int digestTokens = tokenCountEstimator.estimate(digest);
+        log.info("{}: {} tokens en JSON FHIR, {} tokens en el resumen ({}% menos)",
+                name, jsonTokens, digestTokens, 100 * (jsonTokens - digestTokens) / jsonTokens);
+
+        assertThat(digestTokens).isLessThan(jsonTokens / 3);
+    }
+
+    @Test
+    void digestIsDeterministicAndDeduplicatesCodingsWithinEachResource() {
+        String digest = FhirDigestEncoder.encode(chronicHistory());
+
+        assertThat(FhirDigestEncoder.encode(chronicHistory())).isEqualTo(digest);
+        assertThat(digest)
+                .contains("PACIENTE: sexo=female | nacimiento=1980-05-01")
+                .contains("2021-03-04 | Diabetes mellitus tipo 2 [SNOMED:44054006,CIE10:E11] | estado=active"
+                        + " | nota=Control trimestral")
+                .contains("Metformina 850 mg [RxNorm:860975] | 1 tableta | 1xc/12h | fin=2025-01-01 | estado=active")
+                .doesNotContain("http://")
+                .doesNotContain("Dr. Pérez");
+        // Tres condiciones distintas con el mismo texto: una línea cada una, con la codificación repetida una sola vez
+        assertThat(digest.split("SNOMED:44054006", -1)).hasSize(4);
+    }
+
+    @Test
+    void digestWithReferencesEndsEachResourceLineWithItsId() {
+        String digest = FhirDigestEncoder.encode(chronicHistory(), true);
+
+        assertThat(digest)
+                .contains("Apendicectomía [SNOMED:80146002] | estado=completed | ref=Procedure/p1")
+                .contains("ref=MedicationRequest/m4")
+                .doesNotContain("ref=Patient");
+        assertThat(FhirDigestEncoder.encode(chronicHistory())).doesNotContain("ref=");
+    }
+
+    private static Bundle chronicHistory() {
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        addPatient(bundle);
+
+        for (int i = 0; i < 3; i++) {
+            Condition condition = new Condition();
+            condition.setId("Condition/c" + i);
+            condition.getMeta().setVersionId("1").setLastUpdated(new Date(0));
+            condition.getClinicalStatus().addCoding()
+                    .setSystem("http://terminology.hl7.org/CodeSystem/condition-clinical").setCode("active");
+            condition.getCode()
+                    .addCoding(new Coding(FhirConstants.SNOMED_CT, "44054006", "Diabetes mellitus tipo 2"))
+                    .addCoding(new Coding(FhirConstants.SNOMED_CT, "44054006", "Diabetes mellitus tipo 2"))
+                    .addCoding(new Coding("http://hl7.org/fhir/sid/icd-10", "E11", "Diabetes mellitus tipo 2"));
+            condition.setSubject(new Reference("Patient/1").setDisplay("Ana García"));
+            condition.setOnset(new DateTimeType("2021-03-04"));
+            condition.addNote().setAuthor(new StringType("Dr. Pérez")).setText("Control trimestral");
+            bundle.addEntry().setFullUrl("http://localhost/fhir/Condition/c" + i).setResource(condition);
+        }
+
+        Procedure procedure = new Procedure();
+        procedure.setId("Procedure/p1");
+        procedure.setStatus(Procedure.ProcedureStatus.COMPLETED);
+        procedure.getCode().addCoding(new Coding(FhirConstants.SNOMED_CT, "80146002", "Apendicectomía"));
+        procedure.setSubject(new Reference("Patient/1"));
+        procedure.setPerformed(new DateTimeType("2024-01-10T08:30:00-05:00"));
+        bundle.addEntry().setFullUrl("http://localhost/fhir/Procedure/p1").setResource(procedure);
+
+        for (int i = 0; i < 5; i++) {
+            addMedicationRequest(bundle, "m" + i, "Metformina 850 mg", "860975", 1, 12, i + 1);
+        }
+        return bundle;
+    }
+
+    private static Bundle polypharmacy() {
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        addPatient(bundle);
+
+        String[][] medications = {
+                {"Enalapril 10 mg", "314076"}, {"Atorvastatina 20 mg", "617312"}, {"Omeprazol 20 mg", "402014"},
+                {"Metformina 850 mg", "860975"}, {"Ácido acetilsalicílico 100 mg", "243670"},
+                {"Levotiroxina 50 mcg", "966222"}
+        };
+        for (int i = 0; i < medications.length; i++) {
+            addMedicationRequest(bundle, "m" + i, medications[i][0], medications[i][1], 1, i % 2 == 0 ? 24 : 12, i % 9 + 1);
+        }
+        return bundle;
+    }
+
+    private static Bundle symptomDiary() {
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        addPatient(bundle);
+
+        // Mismo formato que SymptomDiaryServiceImpl
+        for (int i = 0; i < 20; i++) {
+            Observation observation = new Observation();
+            observation.setId("Observation/o" + i);
+            observation.getMeta().setVersionId("1").setLastUpdated(new Date(0));
+            observation.setStatus(Observation.ObservationStatus.FINAL);
+            observation.getCategoryFirstRep().addCoding().setSystem(FhirConstants.OBSERVATION_CATEGORY)
+                    .setCode(FhirConstants.SYMPTOM_CATEGORY).setDisplay("Symptom");
+            observation.getCode().addCoding().setSystem(FhirConstants.LOINC).setCode("symptom-diary")
+                    .setDisplay("Registro de síntoma");
+            observation.getSubject().setReference("Patient/1");
+            observation.setEffective(new DateTimeType("2024-05-" + String.format("%02d", i + 1) + "T20:15:00-05:00"));
+            observation.addNote().setText("Empeora por la tarde");
+
+            Observation.ObservationComponentComponent component = observation.addComponent();
+            String symptom = SYMPTOMS[i % SYMPTOMS.length];
+            component.getCode().setText(symptom).addCoding().setSystem(FhirConstants.SNOMED_CT)
+                    .setCode("25064002").setDisplay(symptom);
+            component.setValue(new CodeableConcept()
+                    .addCoding(new Coding(FhirConstants.SNOMED_CT, "255604002", "Mild"))
+                    .setText(INTENSITIES[i % INTENSITIES.length]));
+            bundle.addEntry().setFullUrl("http://localhost/fhir/Observation/o" + i).setResource(observation);
+        }
+        return bundle;
+    }
+
+    private static void addPatient(Bundle bundle) {
+        Patient patient = new Patient();
+        patient.setId("Patient/1/_history/3");
+        patient.getMeta().setLastUpdated(new Date(0)).addProfile("http://hl7.org/fhir/StructureDefinition/Patient");
+        patient.getText().setStatus(Narrative.NarrativeStatus.GENERATED).setDivAsString("<div>Paciente de Dr. Pérez</div>");
+        patient.addIdentifier().setSystem("http://appmedica.org/fhir/identifiers/dni").setValue("12345678");
+        patient.addName().setFamily("García").addGiven("Ana");
+        patient.addTelecom().setSystem(ContactPoint.ContactPointSystem.PHONE).setValue("+51987654321");
+        patient.setGender(Enumerations.AdministrativeGender.FEMALE);
+        patient.setBirthDateElement(new DateType("1980-05-01"));
+        bundle.addEntry().setFullUrl("http://localhost/fhir/Patient/1").setResource(patient);
+    }
+
+    private static void addMedicationRequest(Bundle bundle, String id, String name, String rxNormCode,
+                                             int dose, int periodHours, int month) {
+        MedicationRequest medicationRequest = new MedicationRequest();
+        medicationRequest.setId("MedicationRequest/" + id);
+        medicationRequest.getMeta().setVersionId("2").setLastUpdated(new Date(0));
+        medicationRequest.setStatus(MedicationRequest.MedicationRequestStatus.ACTIVE);
+        medicationRequest.setIntent(MedicationRequest.MedicationRequestIntent.ORDER);
+        medicationRequest.setMedication(new CodeableConcept()
+                .addCoding(new Coding("http://www.nlm.nih.gov/research/umls/rxnorm", rxNormCode, name))
+                .setText(name));
+        medicationRequest.setSubject(new Reference("Patient/1"));
+        medicationRequest.setAuthoredOnElement(new DateTimeType("2024-0" + month + "-01T09:00:00-05:00"));
+        Dosage dosage = medicationRequest.addDosageInstruction();
+        dosage.addDoseAndRate().setDose(new Quantity().setValue(dose).setUnit("tableta"));
+        dosage.getTiming().getRepeat().setFrequency(1).setPeriod(periodHours).setPeriodUnit(Timing.UnitsOfTime.H);
+        medicationRequest.getDispenseRequest().getValidityPeriod()
+                .setStartElement(new DateTimeType("2024-0" + month + "-01"))
+                .setEndElement(new DateTimeType("2025-0" + month + "-01"));
+        bundle.addEntry().setFullUrl("http://localhost/fhir/MedicationRequest/" + id).setResource(medicationRequest);
+    }
+}
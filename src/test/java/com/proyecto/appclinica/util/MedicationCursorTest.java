@@ -0,0 +1,101 @@
+package com.proyecto.appclinica.util;
+
+import com.proyecto.appclinica.exception.InvalidRequestException;
+import com.proyecto.appclinica.model.dto.treatment.medication.MedicationDoseView;
+import com.proyecto.appclinica.model.entity.EMedicationStatementStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MedicationCursorTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2025, 3, 30, 8, 15);
+
+    @Test
+    void roundTripsTimeIdAndReturnedRequests() {
+        MedicationCursor cursor = new MedicationCursor(TIME, -123456789L, Set.of("mr-2", "mr-1"));
+
+        assertThat(MedicationCursor.decode(cursor.encode())).isEqualTo(cursor);
+        assertThat(MedicationCursor.decode(new MedicationCursor(TIME, Long.MIN_VALUE).encode()))
+                .isEqualTo(new MedicationCursor(TIME, Long.MIN_VALUE));
+        assertThat(cursor.encode()).doesNotContain("=", "+", "/");
+    }
+
+    @Test
+    void decodesCursorsWithoutReturnedRequests() {
+        String oldCursor = base64(TIME + "_42");
+
+        assertThat(MedicationCursor.decode(oldCursor)).isEqualTo(new MedicationCursor(TIME, 42));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"%%%", "", "MjAyNQ", "bm8tc2VwYXJhdG9y"})
+    void rejectsMalformedCursors(String cursor) {
+        assertThatThrownBy(() -> MedicationCursor.decode(cursor)).isInstanceOf(InvalidRequestException.class);
+    }
+
+    @Test
+    void rejectsCursorsWithInvalidTimeOrId() {
+        assertThatThrownBy(() -> MedicationCursor.decode(base64("2025-13-01T08:15_42")))
+                .isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> MedicationCursor.decode(base64(TIME + "_abc")))
+                .isInstanceOf(InvalidRequestException.class);
+    }
+
+    @Test
+    void comparesByTimeThenId() {
+        MedicationCursor cursor = new MedicationCursor(TIME, 10);
+
+        assertThat(cursor.isBefore(dose(11, TIME, "mr-1"))).isTrue();
+        assertThat(cursor.isBefore(dose(10, TIME, "mr-1"))).isFalse();
+        assertThat(cursor.isBefore(dose(-5, TIME.plusMinutes(1), "mr-1"))).isTrue();
+        assertThat(cursor.isBefore(dose(99, TIME.minusMinutes(1), "mr-1"))).isFalse();
+    }
+
+    @Test
+    void skipsDosesAlreadyReturnedBeforeTheyWereMaterialized() {
+        long virtualId = VirtualDoseId.encode(3, Timestamp.valueOf(TIME));
+        List<MedicationDoseView> page = List.of(
+                dose(1, TIME.minusHours(1), "mr-9"),
+                dose(virtualId, TIME, "mr-3"));
+
+        MedicationCursor cursor = MedicationCursor.after(page, new MedicationCursor(TIME.minusDays(1), Long.MIN_VALUE));
+
+        assertThat(cursor).isEqualTo(new MedicationCursor(TIME, virtualId, Set.of("mr-3")));
+        // La misma dosis, ya guardada con un ID positivo, no se repite; las de otros tratamientos sí aparecen
+        assertThat(cursor.isBefore(dose(500, TIME, "mr-3"))).isFalse();
+        assertThat(cursor.isBefore(dose(501, TIME, "mr-4"))).isTrue();
+        assertThat(cursor.isBefore(dose(502, TIME, null))).isTrue();
+    }
+
+    @Test
+    void keepsReturnedRequestsWhileConsecutivePagesEndAtTheSameTime() {
+        MedicationCursor previous = new MedicationCursor(TIME, -20, Set.of("mr-1"));
+
+        MedicationCursor sameTime = MedicationCursor.after(List.of(dose(-10, TIME, "mr-2")), previous);
+        MedicationCursor laterTime = MedicationCursor.after(List.of(dose(-10, TIME.plusHours(1), "mr-2")), previous);
+
+        assertThat(sameTime.medicationRequestIds()).containsExactlyInAnyOrder("mr-1", "mr-2");
+        assertThat(laterTime.medicationRequestIds()).containsExactly("mr-2");
+    }
+
+    private static MedicationDoseView dose(long id, LocalDateTime time, String medicationRequestId) {
+        return new MedicationDoseView(id, "Metformina 850 mg", BigDecimal.ONE, "tableta", Timestamp.valueOf(time),
+                time.toLocalDate(), EMedicationStatementStatus.INTENDED, medicationRequestId);
+    }
+
+    private static String base64(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,88 @@
+package com.proyecto.appclinica.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.TimeZone;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VirtualDoseIdTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2025, 3, 30, 8, 15);
+
+    @Test
+    void roundTripsScheduleIdAndTimeOfTaking() {
+        long id = VirtualDoseId.encode(42, Timestamp.valueOf(TIME));
+
+        assertThat(VirtualDoseId.isVirtual(id)).isTrue();
+        assertThat(VirtualDoseId.decode(id)).isEqualTo(new VirtualDoseId(42, TIME));
+        assertThat(VirtualDoseId.decode(id).timestamp()).isEqualTo(Timestamp.valueOf(TIME));
+    }
+
+    @Test
+    void roundTripsAtTheBoundaries() {
+        LocalDateTime epoch = LocalDateTime.of(1970, 1, 1, 0, 0);
+        LocalDateTime latest = LocalDateTime.of(2242, 3, 16, 12, 56, 31);
+
+        for (long scheduleId : new long[]{1, VirtualDoseId.MAX_SCHEDULE_ID}) {
+            for (LocalDateTime time : new LocalDateTime[]{epoch, TIME, latest}) {
+                long id = VirtualDoseId.encode(scheduleId, Timestamp.valueOf(time));
+
+                assertThat(id).isNegative();
+                assertThat(VirtualDoseId.decode(id)).isEqualTo(new VirtualDoseId(scheduleId, time));
+            }
+        }
+    }
+
+    @Test
+    void rejectsValuesOutsideTheEncodableRange() {
+        Timestamp time = Timestamp.valueOf(TIME);
+
+        assertThatThrownBy(() -> VirtualDoseId.encode(0, time)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> VirtualDoseId.encode(VirtualDoseId.MAX_SCHEDULE_ID + 1, time))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> VirtualDoseId.encode(1, Timestamp.valueOf(LocalDateTime.of(1969, 12, 31, 23, 59))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> VirtualDoseId.encode(1, Timestamp.valueOf(LocalDateTime.of(2242, 3, 16, 12, 56, 32))))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void isUniquePerDoseAndNeverClashesWithStoredIds() {
+        Timestamp time = Timestamp.valueOf(TIME);
+
+        // Los IDs estables nunca coinciden con los de las dosis guardadas (positivos)
+        assertThat(VirtualDoseId.isVirtual(1L)).isFalse();
+        assertThat(VirtualDoseId.isVirtual(null)).isFalse();
+        assertThat(VirtualDoseId.encode(1, time)).isNotEqualTo(VirtualDoseId.encode(2, time));
+        assertThat(VirtualDoseId.encode(1, time))
+                .isNotEqualTo(VirtualDoseId.encode(1, Timestamp.valueOf(TIME.plusSeconds(1))));
+    }
+
+    // La hora se codifica sin zona: el ID es el mismo en cualquier zona horaria del servidor,
+    // incluidas las horas repetidas al retrasar el reloj
+    @ParameterizedTest
+    @ValueSource(strings = {"UTC", "America/Lima", "Europe/Madrid", "Pacific/Kiritimati", "America/New_York"})
+    void isIndependentOfTheDefaultTimeZone(String zone) {
+        TimeZone defaultZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone(zone));
+            LocalDateTime repeatedHour = LocalDateTime.of(2024, 11, 3, 1, 30);
+
+            for (LocalDateTime time : new LocalDateTime[]{TIME, repeatedHour}) {
+                long id = VirtualDoseId.encode(7, Timestamp.valueOf(time));
+
+                assertThat(id).isEqualTo(-((7L << 33) | time.toEpochSecond(ZoneOffset.UTC)));
+                assertThat(VirtualDoseId.decode(id).timestamp()).isEqualTo(Timestamp.valueOf(time));
+            }
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+}